@@ -0,0 +1,189 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Synthetic stylesheets for the benchmarks. They are generated from fixed seeds, so every run sees the same input and
+ * nothing has to be downloaded.
+ *
+ * @author hoersch
+ */
+public final class Corpora {
+    private static final String[] _ELEMENTS = { "a", "p", "div", "span", "li", "ul", "table", "td", "input", "button", "h1", "h2", "img", "nav" };
+    private static final String[] _STATES = { "", "", "", ":hover", ":focus", ":active", ":first-child", "::before" };
+    private static final String[] _PROPERTIES = { "color", "background-color", "margin", "padding", "border", "display", "width", "height",
+                    "font-size", "line-height", "text-align", "margin-top", "padding-left", "border-radius", "box-shadow", "transition" };
+    private static final String[] _VALUES = { "0", "1px", "4px 8px", "10px 0 10px 0", "#fff", "#333333", "red", "transparent", "block",
+                    "inline-block", "none", "100%", "1.5", "center", "1px solid #ccc", "0 1px 2px rgba(0,0,0,.075)", "-webkit-box",
+                    "-moz-linear-gradient(top, #fff, #e6e6e6)", "all .2s ease-in-out", "bold !important" };
+
+    /**
+     * Media queries used by the generated stylesheets.
+     */
+    private static final String[] _MEDIA = { "@media (max-width: 767px)", "@media (min-width: 768px) and (max-width: 979px)",
+                    "@media print", "@media screen and (min-width: 1200px)" };
+
+    private Corpora() {
+    }
+
+    /**
+     * @return a stylesheet like a CSS framework, about 120 KB with comments, repeated selectors and media queries
+     */
+    public static String bootstrap() {
+        return rules(new Random(1), 120 * 1024, 0);
+    }
+
+    /**
+     * @param size
+     *            in characters, for example 10 MB
+     * @return many framework-like stylesheets concatenated into one bundle
+     */
+    public static String bundle(int size) {
+        StringBuilder bundle = new StringBuilder(size + 1024);
+        Random random = new Random(2);
+        while (bundle.length() < size) {
+            bundle.append(rules(random, 120 * 1024, 0));
+            bundle.append('\n');
+        }
+        return bundle.toString();
+    }
+
+    /**
+     * @param depth
+     *            of the nested media queries
+     * @return a stylesheet whose rules are nested in media queries up to the given depth
+     */
+    public static String deepMedia(int depth) {
+        return rules(new Random(3), 120 * 1024, depth);
+    }
+
+    /**
+     * Writes images of a few hundred bytes and returns a stylesheet referencing each of them a few times.
+     *
+     * @param directory
+     * @param count
+     *            of images
+     * @return the stylesheet
+     * @throws IOException
+     */
+    public static String smallImages(Path directory, int count) throws IOException {
+        Random random = new Random(4);
+        StringBuilder stylesheet = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            byte[] image = new byte[100 + random.nextInt(1900)];
+            random.nextBytes(image);
+            // PNG signature, so the content type is the same on every host
+            byte[] signature = { (byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A };
+            System.arraycopy(signature, 0, image, 0, signature.length);
+            Path path = directory.resolve("icon-" + i + ".png");
+            Files.write(path, image);
+
+            for (int j = 0; j < 1 + random.nextInt(3); j++) {
+                stylesheet.append(".icon-").append(i).append(j == 0 ? "" : j == 1 ? ":hover" : ":focus").append(" {\n");
+                stylesheet.append("  background: url(").append(path).append(") no-repeat left center;\n");
+                stylesheet.append("  padding-left: 20px;\n}\n");
+            }
+        }
+        return stylesheet.toString();
+    }
+
+    private static String rules(Random random, int size, int depth) {
+        StringBuilder css = new StringBuilder(size + 1024);
+        while (css.length() < size) {
+            if (random.nextInt(20) == 0) {
+                css.append("/* ").append(word(random)).append(" section */\n");
+            }
+            if (depth > 0 || random.nextInt(15) == 0) {
+                media(random, css, Math.max(depth, 1), 1);
+            } else {
+                rule(random, css, "");
+            }
+        }
+        return css.toString();
+    }
+
+    private static void media(Random random, StringBuilder css, int depth, int level) {
+        String indent = indent(level - 1);
+        css.append(indent).append(_MEDIA[random.nextInt(_MEDIA.length)]).append(" {\n");
+        int rules = 1 + random.nextInt(5);
+        for (int i = 0; i < rules; i++) {
+            if (level < depth && random.nextBoolean()) {
+                media(random, css, depth, level + 1);
+            } else {
+                rule(random, css, indent(level));
+            }
+        }
+        css.append(indent).append("}\n");
+    }
+
+    private static void rule(Random random, StringBuilder css, String indent) {
+        css.append(indent);
+        int selectors = 1 + (random.nextInt(4) == 0 ? random.nextInt(3) : 0);
+        for (int i = 0; i < selectors; i++) {
+            if (i > 0) {
+                css.append(",\n").append(indent);
+            }
+            css.append(selector(random));
+        }
+        css.append(" {\n");
+        int declarations = 1 + random.nextInt(8);
+        for (int i = 0; i < declarations; i++) {
+            css.append(indent).append("  ").append(_PROPERTIES[random.nextInt(_PROPERTIES.length)]).append(": ");
+            css.append(_VALUES[random.nextInt(_VALUES.length)]).append(";\n");
+        }
+        css.append(indent).append("}\n");
+    }
+
+    private static String selector(Random random) {
+        StringBuilder selector = new StringBuilder();
+        int parts = 1 + random.nextInt(3);
+        for (int i = 0; i < parts; i++) {
+            if (i > 0) {
+                selector.append(' ');
+            }
+            switch (random.nextInt(3)) {
+            case 0:
+                selector.append(_ELEMENTS[random.nextInt(_ELEMENTS.length)]);
+                break;
+            case 1:
+                // Few distinct classes, so that rules with the same selector are merged
+                selector.append('.').append(word(random)).append('-').append(random.nextInt(50));
+                break;
+            default:
+                selector.append('#').append(word(random));
+            }
+        }
+        return selector.append(_STATES[random.nextInt(_STATES.length)]).toString();
+    }
+
+    private static String word(Random random) {
+        String[] words = { "btn", "nav", "navbar", "dropdown", "alert", "table", "form", "control", "label", "badge", "modal", "carousel" };
+        return words[random.nextInt(words.length)];
+    }
+
+    private static String indent(int level) {
+        StringBuilder indent = new StringBuilder();
+        for (int i = 0; i < level; i++) {
+            indent.append("  ");
+        }
+        return indent.toString();
+    }
+}
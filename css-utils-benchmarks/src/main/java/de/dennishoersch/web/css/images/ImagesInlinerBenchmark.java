@@ -0,0 +1,84 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css.images;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.dennishoersch.web.css.benchmarks.Corpora;
+import de.dennishoersch.web.css.images.resolver.FilesystemPathResolver;
+
+/**
+ * Throughput of inlining many small local images, with and without the in-memory image cache.
+ *
+ * @author hoersch
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ImagesInlinerBenchmark {
+
+    @Param({ "500" })
+    public int _images;
+
+    private Path _directory;
+    private String _stylesheet;
+    private ImagesInliner _inliner;
+    private ImagesInliner _cached;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        _directory = Files.createTempDirectory("css-utils-benchmarks");
+        _stylesheet = Corpora.smallImages(_directory, _images);
+        _inliner = ImagesInliner.with(new FilesystemPathResolver());
+        _cached = _inliner.cachedIn(new ImageCache(64 * 1024 * 1024));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(_directory.toFile());
+    }
+
+    @Benchmark
+    public String process() throws IOException {
+        return _inliner.process(_stylesheet);
+    }
+
+    @Benchmark
+    public String processCached() throws IOException {
+        return _cached.process(_stylesheet);
+    }
+}
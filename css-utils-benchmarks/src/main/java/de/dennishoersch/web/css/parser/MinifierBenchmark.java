@@ -0,0 +1,81 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css.parser;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.dennishoersch.web.css.benchmarks.Corpora;
+
+/**
+ * Throughput of each value pass on its own and of all together, to weigh their CPU time against the characters they
+ * save. The saved characters of the corpus are printed once per trial.
+ *
+ * @author hoersch
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MinifierBenchmark {
+
+    @Param({ "bootstrap", "bundle-10mb" })
+    public String _corpus;
+
+    @Param({ "colors", "numbers", "zero-units", "quotes", "font-weight", "all" })
+    public String _passes;
+
+    private Stylesheet _parsed;
+    private List<ValuePass> _valuePasses;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        switch (_corpus) {
+        case "bootstrap":
+            _parsed = Parser.parse(Corpora.bootstrap());
+            break;
+        case "bundle-10mb":
+            _parsed = Parser.parse(Corpora.bundle(10 * 1024 * 1024));
+            break;
+        default:
+            throw new IllegalArgumentException(_corpus);
+        }
+        _valuePasses = ValuePasses.named(_passes);
+
+        int saved = _parsed.length() - Minifier.minify(_parsed, _valuePasses).length();
+        System.out.println("Saved " + saved + " of " + _parsed.length() + " characters.");
+    }
+
+    @Benchmark
+    public Stylesheet minify() {
+        return Minifier.minify(_parsed, _valuePasses);
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css.parser;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.dennishoersch.web.css.benchmarks.Corpora;
+
+/**
+ * Throughput of the phases of the parser: stripping, parsing, merging and serializing. Lives in the package of the
+ * parser to reach the package private phases.
+ *
+ * @author hoersch
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+    @Param({ "bootstrap", "bundle-10mb", "deep-media" })
+    public String _corpus;
+
+    private String _stylesheet;
+    private String _stripped;
+    private List<Rule> _rules;
+    private Stylesheet _parsed;
+    private ForkJoinPool _pool;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        switch (_corpus) {
+        case "bootstrap":
+            _stylesheet = Corpora.bootstrap();
+            break;
+        case "bundle-10mb":
+            _stylesheet = Corpora.bundle(10 * 1024 * 1024);
+            break;
+        case "deep-media":
+            _stylesheet = Corpora.deepMedia(8);
+            break;
+        default:
+            throw new IllegalArgumentException(_corpus);
+        }
+        _stripped = Util.stripUnnecessary(_stylesheet);
+
+        StylesheetBuilder builder = new StylesheetBuilder();
+        Parser.parse(new StringReader(_stylesheet), builder);
+        _rules = builder.getRules();
+        _parsed = builder.getStylesheet();
+        _pool = new ForkJoinPool();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        _pool.shutdown();
+    }
+
+    @Benchmark
+    public String strip() {
+        return Util.stripUnnecessary(_stylesheet);
+    }
+
+    @Benchmark
+    public Stylesheet parse() {
+        return Parser.parse(_stylesheet);
+    }
+
+    @Benchmark
+    public Stylesheet parseStripped() {
+        return Parser.parse(_stripped);
+    }
+
+    @Benchmark
+    public Stylesheet parseParallel() {
+        return Parser.parse(_stylesheet, _pool);
+    }
+
+    /**
+     * Merge by selector and by content of the top level rules.
+     */
+    @Benchmark
+    public List<Rule> normalize() {
+        return Parser.normalize(_rules);
+    }
+
+    @Benchmark
+    public String serialize() {
+        return _parsed.toString();
+    }
+
+    @Benchmark
+    public int serializeStreamed() throws IOException {
+        StringWriter out = new StringWriter(_parsed.length());
+        _parsed.writeTo(out);
+        return out.getBuffer().length();
+    }
+}
@@ -0,0 +1,365 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.SetMultimap;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+
+import de.dennishoersch.web.css.images.ImageCache;
+import de.dennishoersch.web.css.images.ImagesInliner;
+import de.dennishoersch.web.css.images.resolver.FilesystemPathResolver;
+import de.dennishoersch.web.css.images.resolver.HttpPathResolver;
+import de.dennishoersch.web.css.metrics.Metrics;
+import de.dennishoersch.web.css.parser.ParseCache;
+import de.dennishoersch.web.css.parser.Parser;
+import de.dennishoersch.web.css.parser.Stylesheet;
+
+/**
+ * Runs {@link Normalizer}, {@link InlineImages} or {@link Combined} for many inputs in one JVM:
+ *
+ * <pre>
+ * Batch normalize|inline|combined in.css[,more.css]:out.css ...
+ * Batch normalize|inline|combined -m manifest.txt
+ * </pre>
+ *
+ * The manifest has one <code>in:out</code> job per line, empty lines and lines starting with <code>#</code> are
+ * ignored. Several inputs of a job are concatenated, the output is separated at the last <code>:</code>.
+ * <p>
+ * The jobs run on a work-stealing pool, which also parses large stylesheets in parallel. Equal inputs are parsed only
+ * once, as long as jobs with the same inputs are unfinished, and all jobs share the resolved images. The time and sizes
+ * of every job are printed to 'standard error', also the compressed size if the outputs are compressed as well and the
+ * fingerprinted names if the system property <code>css-utils.manifest</code> names a manifest, see {@link Output}.
+ * </p>
+ *
+ * @author hoersch
+ */
+public class Batch {
+    private static final long _IMAGE_CACHE_SIZE = 64L << 20;
+
+    private final String _command;
+    private final ImagesInliner _inliner;
+    private final ForkJoinPool _pool;
+    private final Manifest _manifest;
+    // The parsed inputs of jobs still to be finished, guarded by itself
+    final Map<HashCode, Parsed> _parsed = Maps.newHashMap();
+    // The number of unfinished jobs per inputs and the parsed inputs they use, guarded by _parsed
+    private final Multiset<List<String>> _pending = HashMultiset.create();
+    private final SetMultimap<List<String>, HashCode> _parsedOf = HashMultimap.create();
+
+    /**
+     * @param command
+     *            'normalize', 'inline' or 'combined'
+     * @param inliner
+     *            shared by all jobs
+     * @param pool
+     *            to run the jobs on
+     */
+    Batch(String command, ImagesInliner inliner, ForkJoinPool pool) {
+        this(command, inliner, pool, null);
+    }
+
+    /**
+     * @param command
+     *            'normalize', 'inline' or 'combined'
+     * @param inliner
+     *            shared by all jobs
+     * @param pool
+     *            to run the jobs on
+     * @param manifest
+     *            to record the fingerprinted outputs in, written after all jobs. <code>null</code> if the outputs are
+     *            not to be fingerprinted.
+     */
+    Batch(String command, ImagesInliner inliner, ForkJoinPool pool, Manifest manifest) {
+        switch (command) {
+        case DaemonProtocol.NORMALIZE:
+        case DaemonProtocol.INLINE:
+        case DaemonProtocol.COMBINED:
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown command '" + command + "'!");
+        }
+        _command = command;
+        _inliner = inliner;
+        _pool = pool;
+        _manifest = manifest;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || ("-m".equals(args[1]) && args.length != 3)) {
+            System.err.println("Usage: Batch normalize|inline|combined (in.css[,more.css]:out.css ... | -m manifest)");
+            System.exit(2);
+        }
+        List<Job> jobs;
+        if ("-m".equals(args[1])) {
+            jobs = jobs(Files.readAllLines(Paths.get(args[2]), Charset.defaultCharset()));
+        } else {
+            jobs = jobs(ImmutableList.copyOf(args).subList(1, args.length));
+        }
+
+        Metrics.addConfigured();
+        ImagesInliner inliner = ImagesInliner.with(new HttpPathResolver(), new FilesystemPathResolver()).cachedIn(new ImageCache(_IMAGE_CACHE_SIZE));
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            int failed = new Batch(args[0], inliner, pool, Manifest.configured()).run(jobs, System.err);
+            System.exit(failed == 0 ? 0 : 1);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * @param lines
+     *            of the form <code>in.css[,more.css]:out.css</code>, empty lines and lines starting with
+     *            <code>#</code> are ignored
+     * @return the jobs
+     */
+    static List<Job> jobs(List<String> lines) {
+        List<Job> jobs = Lists.newArrayList();
+        for (String line : lines) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            int separator = line.lastIndexOf(':');
+            if (separator <= 0 || separator == line.length() - 1) {
+                throw new IllegalArgumentException("Job '" + line + "' is not of the form 'in.css:out.css'!");
+            }
+            List<String> inputs = Lists.newArrayList(Splitter.on(',').trimResults().omitEmptyStrings().split(line.substring(0, separator)));
+            jobs.add(new Job(inputs.toArray(new String[inputs.size()]), Paths.get(line.substring(separator + 1).trim())));
+        }
+        return jobs;
+    }
+
+    /**
+     * Runs all jobs and prints their times.
+     *
+     * @param jobs
+     * @param report
+     * @return the number of failed jobs
+     */
+    int run(List<Job> jobs, PrintStream report) {
+        long start = System.nanoTime();
+        synchronized (_parsed) {
+            for (Job job : jobs) {
+                _pending.add(job.inputs());
+            }
+        }
+        List<Callable<Job>> tasks = Lists.newArrayList();
+        for (final Job job : jobs) {
+            tasks.add(new Callable<Job>() {
+                @Override
+                public Job call() {
+                    run(job);
+                    return job;
+                }
+            });
+        }
+        _pool.invokeAll(tasks);
+        long nanos = System.nanoTime() - start;
+
+        int failed = 0;
+        for (Job job : jobs) {
+            if (job._error == null) {
+                String compressed = job._compressedSize < 0 ? "" : String.format(" (%d gzipped)", job._compressedSize);
+                String fingerprinted = job._fingerprinted == null ? "" : " -> " + job._fingerprinted.getFileName() + (job._unchanged ? " (unchanged)" : "");
+                report.println(String.format("%6d ms %10d -> %10d bytes%s  %s%s", TimeUnit.NANOSECONDS.toMillis(job._nanos), job._inputSize, job._outputSize, compressed, job._output,
+                        fingerprinted));
+            } else {
+                report.println(String.format("%6d ms FAILED %s: %s", TimeUnit.NANOSECONDS.toMillis(job._nanos), job._output, job._error));
+                failed++;
+            }
+        }
+        if (_manifest != null) {
+            try {
+                _manifest.write();
+            } catch (IOException e) {
+                report.println(String.format("FAILED manifest %s: %s", _manifest.file(), e));
+                failed++;
+            }
+        }
+        report.println(String.format("%6d ms for %d jobs, %d failed", TimeUnit.NANOSECONDS.toMillis(nanos), jobs.size(), failed));
+        return failed;
+    }
+
+    private void run(Job job) {
+        long start = System.nanoTime();
+        try {
+            String css = CmdLineUtil.readArgumentsOrStdIn(job._inputs);
+            Output output;
+            try (Output result = Output.open(job._output, _manifest)) {
+                output = result;
+                run(job, css, result.writer());
+                result.commit();
+            }
+            for (String input : job._inputs) {
+                job._inputSize += Files.size(Paths.get(input));
+            }
+            job._outputSize = output.size();
+            job._compressedSize = output.compressedSize();
+            if (_manifest != null) {
+                job._fingerprinted = output.file();
+                job._unchanged = output.isUnchanged();
+            }
+        } catch (IOException | RuntimeException e) {
+            job._error = e;
+        } finally {
+            finished(job);
+        }
+        job._nanos = System.nanoTime() - start;
+    }
+
+    private void run(Job job, String css, Writer result) throws IOException {
+        switch (_command) {
+        case DaemonProtocol.NORMALIZE:
+            Normalizer.write(parse(job, css), result);
+            break;
+        case DaemonProtocol.INLINE:
+            _inliner.process(new StringReader(css), result);
+            break;
+        case DaemonProtocol.COMBINED:
+            Combined.write(parse(job, css), result, _inliner);
+            break;
+        default:
+            throw new IllegalStateException("Unknown command '" + _command + "'!");
+        }
+    }
+
+    /**
+     * Parses equal inputs only once, also if they are parsed concurrently. The stylesheet is kept until all jobs with
+     * the same inputs are finished, see {@link #finished(Job)}.
+     */
+    private Stylesheet parse(Job job, final String css) throws IOException {
+        HashCode key = Hashing.sha256().hashString(css);
+        FutureTask<Stylesheet> task = new FutureTask<>(new Callable<Stylesheet>() {
+            @Override
+            public Stylesheet call() throws IOException {
+                ParseCache cache = Normalizer.parseCache();
+                return cache == null ? Parser.parse(css, _pool) : cache.parse(css, _pool);
+            }
+        });
+        Future<Stylesheet> parsed;
+        boolean first;
+        synchronized (_parsed) {
+            Parsed existing = _parsed.get(key);
+            first = existing == null;
+            if (first) {
+                existing = new Parsed(task);
+                _parsed.put(key, existing);
+            }
+            if (_parsedOf.put(job.inputs(), key)) {
+                existing._inputs++;
+            }
+            parsed = existing._stylesheet;
+        }
+        if (first) {
+            task.run();
+        }
+        try {
+            return parsed.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Drops the parsed stylesheets, which are not used by unfinished jobs any more.
+     */
+    private void finished(Job job) {
+        List<String> inputs = job.inputs();
+        synchronized (_parsed) {
+            if (_pending.remove(inputs, 1) > 1) {
+                return;
+            }
+            for (HashCode key : _parsedOf.removeAll(inputs)) {
+                Parsed parsed = _parsed.get(key);
+                parsed._inputs--;
+                if (parsed._inputs == 0) {
+                    _parsed.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * A stylesheet and the number of distinct inputs of unfinished jobs, which have used it.
+     */
+    private static final class Parsed {
+        final Future<Stylesheet> _stylesheet;
+        int _inputs;
+
+        Parsed(Future<Stylesheet> stylesheet) {
+            _stylesheet = stylesheet;
+        }
+    }
+
+    /**
+     * Inputs, output and after the run the time and sizes of one job.
+     */
+    static final class Job {
+        final String[] _inputs;
+        final Path _output;
+        long _nanos;
+        long _inputSize;
+        long _outputSize;
+        // -1 if not compressed
+        long _compressedSize = -1;
+        // Only if fingerprinted
+        Path _fingerprinted;
+        boolean _unchanged;
+        Exception _error;
+
+        Job(String[] inputs, Path output) {
+            _inputs = inputs;
+            _output = output;
+        }
+
+        List<String> inputs() {
+            return Arrays.asList(_inputs);
+        }
+    }
+}
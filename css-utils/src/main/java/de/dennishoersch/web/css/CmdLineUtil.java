@@ -15,9 +15,19 @@
  */
 package de.dennishoersch.web.css;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.List;
 
 import com.google.common.collect.Lists;
@@ -38,6 +48,65 @@ public class CmdLineUtil {
      * @throws IOException
      */
     public static String readArgumentsOrStdIn(String[] args) throws IOException {
+        byte[] data = ByteStreams.toByteArray(argumentsOrStdIn(args, System.in));
+        String css = new String(data);
+        return css;
+    }
+
+    /**
+     * Opens the input whether from given arguments or 'standard in' to be read as stream. See
+     * {@link #readArgumentsOrStdIn(String[])}.
+     * @param args
+     * @return reader of the content
+     * @throws IOException
+     */
+    public static Reader openArgumentsOrStdIn(String[] args) throws IOException {
+        return openArgumentsOr(args, System.in);
+    }
+
+    /**
+     * Opens the input whether from given arguments or the given stream, see {@link #openArgumentsOrStdIn(String[])}.
+     */
+    static Reader openArgumentsOr(String[] args, InputStream in) throws IOException {
+        return new BufferedReader(new InputStreamReader(argumentsOrStdIn(args, in).getInput()));
+    }
+
+    /**
+     * @return a buffered writer to 'standard out', which encodes directly into the channel
+     */
+    public static Writer openStdOut() {
+        return open(System.out);
+    }
+
+    /**
+     * @return a buffered writer to the given stream, which encodes directly into a channel
+     */
+    static Writer open(OutputStream out) {
+        return Channels.newWriter(Channels.newChannel(out), Charset.defaultCharset().newEncoder(), -1);
+    }
+
+    /**
+     * @return the file given by <code>-o file</code> in front of the input files or <code>null</code> if the result is
+     *         to be written to 'standard out'
+     */
+    static Path outputFile(String[] args) {
+        if (args.length == 0 || !"-o".equals(args[0])) {
+            return null;
+        }
+        if (args.length == 1) {
+            throw new IllegalArgumentException("Option '-o' needs a file!");
+        }
+        return Paths.get(args[1]);
+    }
+
+    /**
+     * @return the input files, the arguments without the output file
+     */
+    static String[] inputFiles(String[] args) {
+        return outputFile(args) == null ? args : Arrays.copyOfRange(args, 2, args.length);
+    }
+
+    private static InputSupplier<InputStream> argumentsOrStdIn(String[] args, InputStream in) {
         List<InputSupplier<? extends InputStream>> input = Lists.newArrayList();
         if (args.length > 0) {
             for (String file : args) {
@@ -51,12 +120,9 @@ public class CmdLineUtil {
                 input.add(Files.newInputStreamSupplier(f));
             }
         } else {
-            input.add(newInputStreamSupplier(System.in));
+            input.add(newInputStreamSupplier(in));
         }
-
-        byte[] data = ByteStreams.toByteArray(ByteStreams.join(input));
-        String css = new String(data);
-        return css;
+        return ByteStreams.join(input);
     }
 
     private static InputSupplier<InputStream> newInputStreamSupplier(final InputStream inputStream) {
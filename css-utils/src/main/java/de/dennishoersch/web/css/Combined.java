@@ -15,10 +15,16 @@
  */
 package de.dennishoersch.web.css;
 
+import java.io.FilterWriter;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.Properties;
 
 import de.dennishoersch.web.css.images.ImagesInliner;
-import de.dennishoersch.web.css.parser.Parser;
+import de.dennishoersch.web.css.images.resolver.FilesystemPathResolver;
+import de.dennishoersch.web.css.images.resolver.HttpPathResolver;
 import de.dennishoersch.web.css.parser.Stylesheet;
 
 /**
@@ -26,21 +32,70 @@ import de.dennishoersch.web.css.parser.Stylesheet;
  * <p>Reads the input to be parsed directly from System.in if no arguments are
  * given, otherwise all arguments have to refer existing files to be read and
  * concatenated.</p>
- * <p>Prints the result to System.out</p>
+ * <p>Prints the result to System.out or with <code>-o file</code> in front of the input files to the file, which is
+ * also compressed if the system property <code>css-utils.gzip</code> is <code>true</code> and fingerprinted if the
+ * system property <code>css-utils.manifest</code> names the manifest to record it in, see {@link Output}.</p>
  *
  * @author hoersch
  */
 public class Combined {
 
     public static void main(String[] args) throws IOException {
-        String css = CmdLineUtil.readArgumentsOrStdIn(args);
+        Path file = CmdLineUtil.outputFile(args);
+        if (file == null) {
+            try (Reader css = CmdLineUtil.openArgumentsOrStdIn(args);
+                    Writer result = CmdLineUtil.openStdOut()) {
+                combine(css, result, ImagesInliner.with(new HttpPathResolver(), new FilesystemPathResolver()));
+            }
+            return;
+        }
 
-        Stylesheet stylesheet = Parser.parse(css);
+        Manifest manifest = Manifest.configured();
+        Output output;
+        try (Reader css = CmdLineUtil.openArgumentsOrStdIn(CmdLineUtil.inputFiles(args));
+                Output result = Output.open(file, manifest)) {
+            output = result;
+            combine(css, result.writer(), ImagesInliner.with(new HttpPathResolver(), new FilesystemPathResolver()));
+            result.commit();
+        }
+        if (manifest != null) {
+            manifest.write();
+        }
+        System.err.println(output);
+    }
 
-        css = stylesheet.toString();
+    /**
+     * Normalizes the stylesheet read from the reader, inlines its images and writes it followed by a line separator.
+     * The writer is not closed.
+     */
+    static void combine(Reader css, Writer result, ImagesInliner inliner) throws IOException {
+        combine(css, result, inliner, System.getProperties());
+    }
 
-        css = ImagesInliner.inline(css);
+    /**
+     * Like {@link #combine(Reader, Writer, ImagesInliner)}, with the optimizations enabled by the given options instead
+     * of the system properties, see {@link Normalizer#OPTIONS}.
+     */
+    static void combine(Reader css, Writer result, ImagesInliner inliner, Properties options) throws IOException {
+        write(Normalizer.parse(css), result, inliner, options);
+    }
+
+    /**
+     * Writes the normalized stylesheet with all images inlined, followed by a line separator. The writer is not closed.
+     */
+    static void write(Stylesheet stylesheet, Writer result, ImagesInliner inliner) throws IOException {
+        write(stylesheet, result, inliner, System.getProperties());
+    }
 
-        System.out.println(css);
+    static void write(Stylesheet stylesheet, final Writer result, ImagesInliner inliner, Properties options) throws IOException {
+        try (Writer inlining = inliner.processing(new FilterWriter(result) {
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        })) {
+            Normalizer.optimize(stylesheet, options).writeTo(inlining);
+            inlining.write(System.lineSeparator());
+        }
     }
 }
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+
+import de.dennishoersch.web.css.images.ImageCache;
+import de.dennishoersch.web.css.images.ImagesInliner;
+import de.dennishoersch.web.css.images.resolver.FilesystemPathResolver;
+import de.dennishoersch.web.css.images.resolver.HttpPathResolver;
+import de.dennishoersch.web.css.metrics.Metrics;
+
+/**
+ * Runs {@link Normalizer}, {@link InlineImages} and {@link Combined} for the {@link DaemonClient}, so that the JVM is
+ * started and warmed up only once for many calls. Listens on the loopback interface only, on the port given as
+ * argument or else by the system property <code>css-utils.daemon.port</code> (default 7787). Metrics are published as
+ * configured by the system property <code>css-utils.metrics</code>, see {@link Metrics#addConfigured()}.
+ * <p>
+ * The jobs run in parallel. Relative files and images are resolved against the working directory of the client, and
+ * the optimizations are enabled by the options of the client instead of the system properties of the daemon, see
+ * {@link DaemonClient}. The encoded images are kept in a cache shared by all jobs.
+ * </p>
+ * <p>
+ * Files are read by the daemon, so only clients which send the token of the daemon are served. The token is written
+ * to a file only the user of the daemon can read, see {@link DaemonProtocol#tokenFile(int)}, and deleted when the
+ * daemon is closed.
+ * </p>
+ *
+ * @author hoersch
+ */
+public class Daemon implements Closeable {
+    private static final java.util.logging.Logger logger = java.util.logging.Logger.getLogger(Daemon.class.getName());
+
+    private static final long _IMAGE_CACHE_SIZE = 64L << 20;
+
+    private final ServerSocket _server;
+    private final Path _tokenFile;
+    private final String _token;
+    private final ExecutorService _jobs = Executors.newCachedThreadPool();
+    private final HttpPathResolver _httpResolver = new HttpPathResolver();
+    private final ImageCache _imageCache = new ImageCache(_IMAGE_CACHE_SIZE);
+
+    /**
+     * @param port
+     *            0 for any free port
+     * @throws IOException
+     */
+    public Daemon(int port) throws IOException {
+        this(port, null);
+    }
+
+    /**
+     * @param port
+     *            0 for any free port
+     * @param tokenFile
+     *            to write the token to, <code>null</code> for the default of the port
+     * @throws IOException
+     */
+    Daemon(int port, Path tokenFile) throws IOException {
+        _server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        try {
+            _tokenFile = tokenFile != null ? tokenFile : DaemonProtocol.tokenFile(getPort());
+            _token = DaemonProtocol.createToken(_tokenFile);
+        } catch (IOException | RuntimeException e) {
+            _server.close();
+            throw e;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DaemonProtocol.port();
+        Metrics.addConfigured();
+        try (Daemon daemon = new Daemon(port)) {
+            logger.log(Level.INFO, "Listening on port " + daemon.getPort() + ".");
+            daemon.run();
+        }
+    }
+
+    /**
+     * @return the port the daemon listens on
+     */
+    public int getPort() {
+        return _server.getLocalPort();
+    }
+
+    /**
+     * Accepts jobs until the daemon is closed.
+     *
+     * @throws IOException
+     */
+    public void run() throws IOException {
+        while (!_server.isClosed()) {
+            final Socket client;
+            try {
+                client = _server.accept();
+            } catch (SocketException e) {
+                if (_server.isClosed()) {
+                    return;
+                }
+                throw e;
+            }
+            _jobs.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try (Socket socket = client) {
+                        serve(socket);
+                    } catch (IOException e) {
+                        logger.log(Level.WARNING, "Job failed!", e);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * @return the file of the token clients have to send
+     */
+    public Path getTokenFile() {
+        return _tokenFile;
+    }
+
+    @Override
+    public void close() throws IOException {
+        _jobs.shutdown();
+        try {
+            _server.close();
+        } finally {
+            Files.deleteIfExists(_tokenFile);
+        }
+    }
+
+    private void serve(Socket socket) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+        if (!DaemonProtocol.isToken(in.readUTF(), _token)) {
+            logger.log(Level.WARNING, "Refused client without the token!");
+            out.writeInt(0);
+            out.writeInt(1);
+            out.writeUTF("Not authorized, the token of the daemon is in '" + _tokenFile + "'!");
+            out.flush();
+            return;
+        }
+
+        String command = in.readUTF();
+        Path workingDirectory = Paths.get(in.readUTF());
+        Properties options = new Properties();
+        for (int i = in.readInt(); i > 0; i--) {
+            options.setProperty(in.readUTF(), in.readUTF());
+        }
+        String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = in.readUTF();
+        }
+
+        String error = "";
+        InputStream stdIn = DaemonProtocol.chunksIn(in);
+        // The output is opened first, so that its chunks are ended whatever fails
+        try (Writer result = CmdLineUtil.open(DaemonProtocol.chunksOut(out));
+                Reader css = CmdLineUtil.openArgumentsOr(args, stdIn)) {
+            checkOptions(options);
+            ImagesInliner inliner = ImagesInliner.with(_httpResolver, new FilesystemPathResolver(workingDirectory)).cachedIn(_imageCache);
+            run(command, css, result, inliner, options);
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.FINE, "Job failed!", e);
+            error = e.toString();
+        }
+
+        out.writeInt(error.isEmpty() ? 0 : 1);
+        out.writeUTF(error);
+        out.flush();
+    }
+
+    /**
+     * Only the optimizations can be applied per job, the daemon writes no files.
+     */
+    private static void checkOptions(Properties options) {
+        for (String name : options.stringPropertyNames()) {
+            if (!Normalizer.OPTIONS.contains(name)) {
+                throw new IllegalArgumentException("Option '" + name + "' is not supported by the daemon!");
+            }
+        }
+    }
+
+    private static void run(String command, Reader css, Writer result, ImagesInliner inliner, Properties options) throws IOException {
+        switch (command) {
+        case DaemonProtocol.NORMALIZE:
+            Normalizer.normalize(css, result, options);
+            break;
+        case DaemonProtocol.INLINE:
+            inliner.process(css, result);
+            break;
+        case DaemonProtocol.COMBINED:
+            Combined.combine(css, result, inliner, options);
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown command '" + command + "'!");
+        }
+    }
+}
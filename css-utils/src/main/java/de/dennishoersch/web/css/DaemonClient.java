@@ -0,0 +1,131 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Thin client of the {@link Daemon}, which behaves like the main classes: <code>DaemonClient normalize|inline|combined
+ * [files...]</code>. Reads 'standard in' if no files are given and prints the result to 'standard out'. The port is
+ * taken from the system property <code>css-utils.daemon.port</code> (default 7787). The working directory and the
+ * other <code>css-utils.*</code> system properties are sent along, so that relative image URLs and the optimizations
+ * are the same as with the main classes. The daemon rejects options it can't apply, like <code>css-utils.gzip</code>.
+ * The token of the daemon is read from its file, see {@link DaemonProtocol#tokenFile(int)}.
+ *
+ * @author hoersch
+ */
+public class DaemonClient {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: DaemonClient " + DaemonProtocol.NORMALIZE + "|" + DaemonProtocol.INLINE + "|" + DaemonProtocol.COMBINED
+                            + " [files...]");
+            System.exit(2);
+        }
+        int exitCode = run(DaemonProtocol.port(), args[0], Arrays.copyOfRange(args, 1, args.length), System.in, System.out, System.err);
+        System.out.flush();
+        if (exitCode != 0) {
+            System.exit(exitCode);
+        }
+    }
+
+    /**
+     * Runs the command in the daemon listening on the given port, in the working directory and with the
+     * <code>css-utils.*</code> system properties of this process.
+     *
+     * @return the exit code
+     * @throws IOException
+     */
+    static int run(int port, String command, String[] files, InputStream stdIn, OutputStream stdOut, PrintStream stdErr) throws IOException {
+        return run(port, DaemonProtocol.tokenFile(port), command, Paths.get("").toAbsolutePath(), DaemonProtocol.options(System.getProperties()), files, stdIn,
+                        stdOut, stdErr);
+    }
+
+    /**
+     * Runs the command in the daemon listening on the given port.
+     *
+     * @param tokenFile
+     *            of the daemon
+     * @param workingDirectory
+     *            to resolve relative files and images against
+     * @param options
+     *            the options of the run, see {@link Normalizer#OPTIONS}
+     * @return the exit code
+     * @throws IOException
+     */
+    static int run(int port, Path tokenFile, String command, Path workingDirectory, Properties options, String[] files, final InputStream stdIn,
+                    OutputStream stdOut, PrintStream stdErr) throws IOException {
+        String token = DaemonProtocol.readToken(tokenFile);
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+
+            out.writeUTF(token);
+            out.writeUTF(command);
+            // The daemon has another working directory
+            out.writeUTF(workingDirectory.toAbsolutePath().toString());
+            Set<String> names = options.stringPropertyNames();
+            out.writeInt(names.size());
+            for (String name : names) {
+                out.writeUTF(name);
+                out.writeUTF(options.getProperty(name));
+            }
+            out.writeInt(files.length);
+            for (String file : files) {
+                out.writeUTF(workingDirectory.resolve(file).toAbsolutePath().toString());
+            }
+            out.flush();
+
+            if (files.length == 0) {
+                // Sent while the output is received, the daemon might write while it reads
+                Thread sending = new Thread("stdin") {
+                    @Override
+                    public void run() {
+                        try {
+                            DaemonProtocol.writeChunks(stdIn, out);
+                        } catch (IOException e) {
+                            // The daemon stopped reading, its answer tells why
+                        }
+                    }
+                };
+                sending.setDaemon(true);
+                sending.start();
+            }
+
+            DaemonProtocol.readChunks(in, stdOut);
+            int exitCode = in.readInt();
+            String error = in.readUTF();
+            if (!error.isEmpty()) {
+                stdErr.println(error);
+            }
+            return exitCode;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.commons.codec.binary.Hex;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableSet;
+
+import de.dennishoersch.web.css.metrics.Metrics;
+
+/**
+ * The protocol between {@link Daemon} and {@link DaemonClient}.
+ * <p>
+ * The client sends the token of the daemon, the command, its working directory, the number of its options followed by
+ * their names and values, and the number of files and their absolute paths. Without files it sends 'standard in' as chunks. The daemon answers with the output as chunks, followed by the exit code and an error message, which is empty
+ * if there was no error. A chunk is its length followed by its bytes, a length of 0 ends the chunks.
+ * </p>
+ * <p>
+ * The daemon reads the files of its clients, so it only serves clients which know its token. The token is written to
+ * a file only the user of the daemon can read, see {@link #tokenFile(int)}.
+ * </p>
+ *
+ * @author hoersch
+ */
+final class DaemonProtocol {
+    static final String PORT_PROPERTY = "css-utils.daemon.port";
+    static final int DEFAULT_PORT = 7787;
+    static final String TOKEN_DIRECTORY_PROPERTY = "css-utils.daemon.token-dir";
+
+    static final String NORMALIZE = "normalize";
+    static final String INLINE = "inline";
+    static final String COMBINED = "combined";
+
+    private static final String _OPTIONS_PREFIX = "css-utils.";
+    private static final Set<String> _PROCESS_OPTIONS = ImmutableSet.of(PORT_PROPERTY, TOKEN_DIRECTORY_PROPERTY, Metrics.PROPERTY, Normalizer.PARSE_CACHE_PROPERTY, Normalizer.PARSE_CACHE_SIZE_PROPERTY);
+    private static final int _CHUNK_SIZE = 8192;
+    private static final int _TOKEN_LENGTH = 32;
+
+    private DaemonProtocol() {
+    }
+
+    static int port() {
+        return Integer.getInteger(PORT_PROPERTY, DEFAULT_PORT).intValue();
+    }
+
+    /**
+     * @param port
+     *            of the daemon
+     * @return the file of the token of the daemon, in the directory given by the system property
+     *         <code>css-utils.daemon.token-dir</code> (default <code>~/.css-utils</code>)
+     */
+    static Path tokenFile(int port) {
+        String directory = System.getProperty(TOKEN_DIRECTORY_PROPERTY);
+        Path tokenDirectory = directory != null ? Paths.get(directory) : Paths.get(System.getProperty("user.home"), ".css-utils");
+        return tokenDirectory.resolve("daemon-" + port + ".token");
+    }
+
+    /**
+     * Writes a new random token to the file, which only the owner can read and write.
+     *
+     * @return the token
+     * @throws IOException
+     */
+    static String createToken(Path file) throws IOException {
+        SecureRandom secureRandom = new SecureRandom();
+        byte[] random = new byte[_TOKEN_LENGTH];
+        secureRandom.nextBytes(random);
+        String token = Hex.encodeHexString(random);
+
+        Path directory = file.toAbsolutePath().getParent();
+        if (!Files.isDirectory(directory)) {
+            Files.createDirectories(directory, ownerOnly("rwx------"));
+        }
+        // Created with its permissions, so it is never readable by others
+        Path tmp = directory.resolve(file.getFileName() + "." + Integer.toHexString(secureRandom.nextInt()) + ".tmp");
+        try {
+            Files.createFile(tmp, ownerOnly("rw-------"));
+            Files.write(tmp, token.getBytes(Charsets.US_ASCII));
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+            throw new IOException("Can't create token file '" + file + "'!", e);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        return token;
+    }
+
+    private static FileAttribute<?>[] ownerOnly(String permissions) {
+        if (!FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            // Like Windows, where the home directory is private anyway
+            return new FileAttribute<?>[0];
+        }
+        return new FileAttribute<?>[] { PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString(permissions)) };
+    }
+
+    /**
+     * @return the token in the file
+     * @throws IOException
+     *             if the file can't be read, the daemon is not running
+     */
+    static String readToken(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), Charsets.US_ASCII).trim();
+    }
+
+    /**
+     * Compares in constant time, so that the token can't be guessed by timing.
+     */
+    static boolean isToken(String token, String expected) {
+        return MessageDigest.isEqual(token.getBytes(Charsets.US_ASCII), expected.getBytes(Charsets.US_ASCII));
+    }
+
+    /**
+     * @return the system properties starting with <code>css-utils.</code>, which are not about the daemon process
+     *         itself like the port, the metrics or the parse cache
+     */
+    static Properties options(Properties systemProperties) {
+        Properties options = new Properties();
+        for (String name : systemProperties.stringPropertyNames()) {
+            if (name.startsWith(_OPTIONS_PREFIX) && !_PROCESS_OPTIONS.contains(name)) {
+                options.setProperty(name, systemProperties.getProperty(name));
+            }
+        }
+        return options;
+    }
+
+    /**
+     * Copies the stream as chunks, including the end of the chunks.
+     */
+    static void writeChunks(InputStream in, DataOutputStream out) throws IOException {
+        byte[] buffer = new byte[_CHUNK_SIZE];
+        int n;
+        while ((n = in.read(buffer)) >= 0) {
+            if (n > 0) {
+                out.writeInt(n);
+                out.write(buffer, 0, n);
+                out.flush();
+            }
+        }
+        out.writeInt(0);
+        out.flush();
+    }
+
+    /**
+     * Copies the chunks to the stream, up to the end of the chunks.
+     */
+    static void readChunks(DataInputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[_CHUNK_SIZE];
+        int length;
+        while ((length = in.readInt()) > 0) {
+            while (length > 0) {
+                int n = in.read(buffer, 0, Math.min(length, buffer.length));
+                if (n < 0) {
+                    throw new IOException("Connection closed within a chunk!");
+                }
+                out.write(buffer, 0, n);
+                length -= n;
+            }
+            out.flush();
+        }
+    }
+
+    /**
+     * Reads the chunks as stream.
+     */
+    static InputStream chunksIn(final DataInputStream in) {
+        return new InputStream() {
+            private int _remaining;
+            private boolean _ended;
+
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (_ended) {
+                    return -1;
+                }
+                if (_remaining == 0) {
+                    _remaining = in.readInt();
+                    if (_remaining <= 0) {
+                        _ended = true;
+                        return -1;
+                    }
+                }
+                int n = in.read(b, off, Math.min(len, _remaining));
+                if (n < 0) {
+                    throw new IOException("Connection closed within a chunk!");
+                }
+                _remaining -= n;
+                return n;
+            }
+        };
+    }
+
+    /**
+     * Writes everything as chunks. Closing the stream ends the chunks, but does not close the given stream.
+     */
+    static OutputStream chunksOut(final DataOutputStream out) {
+        return new OutputStream() {
+            private boolean _closed;
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                if (len > 0) {
+                    out.writeInt(len);
+                    out.write(b, off, len);
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                out.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (!_closed) {
+                    _closed = true;
+                    out.writeInt(0);
+                    out.flush();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.Lists;
+
+/**
+ * A directory of cache entries, one file per key, which might be shared by several processes.
+ * <p>
+ * Entries are written completely before they become visible. The modification time of an entry marks its last use;
+ * the least recently used entries are deleted when the total size exceeds the limit. The directory is scanned only when
+ * the cache is opened, afterwards the sizes and the order of use are tracked in memory. Entries of other versions count
+ * as well and are evicted like all others, so several versions of the tool can share the directory. Temporary files
+ * left by crashed processes are deleted when the cache is opened.
+ * </p>
+ *
+ * @author hoersch
+ */
+public class DiskCache {
+    private static final String _TMP_SUFFIX = ".tmp";
+    // Older temporary files are not written any more
+    private static final long _STALE_TMP_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private final Path _directory;
+    private final String _suffix;
+    private final long _maxSize;
+
+    // The sizes of the entries, the least recently used first
+    private final LinkedHashMap<Path, Long> _entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long _size;
+
+    /**
+     * @param directory
+     *            created if it does not exist
+     * @param extension
+     *            of the entry files
+     * @param version
+     *            of the entries
+     * @param maxSize
+     *            maximum number of bytes of all entries
+     * @throws IOException
+     */
+    public DiskCache(Path directory, String extension, int version, long maxSize) throws IOException {
+        _directory = Files.createDirectories(directory);
+        _suffix = ".v" + version + "." + extension;
+        _maxSize = maxSize;
+
+        List<Entry> entries = Lists.newArrayList();
+        long staleBefore = System.currentTimeMillis() - _STALE_TMP_MILLIS;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(_directory, "*." + extension + "*")) {
+            for (Path file : files) {
+                try {
+                    BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                    long lastUsed = attributes.lastModifiedTime().toMillis();
+                    if (!file.getFileName().toString().endsWith(_TMP_SUFFIX)) {
+                        entries.add(new Entry(file, attributes.size(), lastUsed));
+                    } else if (lastUsed < staleBefore) {
+                        Files.deleteIfExists(file);
+                    }
+                } catch (NoSuchFileException e) {
+                    // Evicted by another process
+                }
+            }
+        }
+        Collections.sort(entries, Entry.LEAST_RECENTLY_USED_FIRST);
+        synchronized (this) {
+            for (Entry entry : entries) {
+                _entries.put(entry._file, Long.valueOf(entry._size));
+                _size += entry._size;
+            }
+            evict();
+        }
+    }
+
+    /**
+     * Marks the entry as used. It might be evicted by another process at any time, so reading it might fail with a
+     * {@link NoSuchFileException} anyway.
+     *
+     * @param key
+     * @return the file of the entry, <code>null</code> if there is none
+     * @throws IOException
+     */
+    public Path get(String key) throws IOException {
+        Path entry = entry(key);
+        long size;
+        try {
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            size = Files.size(entry);
+        } catch (NoSuchFileException e) {
+            synchronized (this) {
+                removed(entry);
+            }
+            return null;
+        }
+        synchronized (this) {
+            // Moves it to the most recently used ones
+            if (_entries.get(entry) == null) {
+                // Written by another process
+                added(entry, size);
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Stores the entry and evicts the least recently used entries if the cache is too large.
+     *
+     * @param key
+     * @param content
+     * @throws IOException
+     */
+    public void put(String key, byte[] content) throws IOException {
+        Path entry = entry(key);
+        Path tmp = Files.createTempFile(_directory, entry.getFileName().toString(), _TMP_SUFFIX);
+        try {
+            Files.write(tmp, content);
+            Files.move(tmp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        synchronized (this) {
+            removed(entry);
+            added(entry, content.length);
+            evict();
+        }
+    }
+
+    /**
+     * @return the number of bytes of all entries known to this instance
+     */
+    public synchronized long getSize() {
+        return _size;
+    }
+
+    private Path entry(String key) {
+        return _directory.resolve(key + _suffix);
+    }
+
+    private void added(Path entry, long size) {
+        _entries.put(entry, Long.valueOf(size));
+        _size += size;
+    }
+
+    private void removed(Path entry) {
+        Long size = _entries.remove(entry);
+        if (size != null) {
+            _size -= size.longValue();
+        }
+    }
+
+    private void evict() throws IOException {
+        Iterator<Map.Entry<Path, Long>> leastRecentlyUsed = _entries.entrySet().iterator();
+        while (_size > _maxSize && leastRecentlyUsed.hasNext()) {
+            Map.Entry<Path, Long> entry = leastRecentlyUsed.next();
+            // Might have been evicted by another process already
+            Files.deleteIfExists(entry.getKey());
+            _size -= entry.getValue().longValue();
+            leastRecentlyUsed.remove();
+        }
+    }
+
+    private static class Entry {
+        static final Comparator<Entry> LEAST_RECENTLY_USED_FIRST = new Comparator<Entry>() {
+            @Override
+            public int compare(Entry o1, Entry o2) {
+                return Long.compare(o1._lastUsed, o2._lastUsed);
+            }
+        };
+
+        final Path _file;
+        final long _size;
+        final long _lastUsed;
+
+        Entry(Path file, long size, long lastUsed) {
+            _file = file;
+            _size = size;
+            _lastUsed = lastUsed;
+        }
+    }
+}
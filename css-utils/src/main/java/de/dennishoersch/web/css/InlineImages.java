@@ -16,12 +16,15 @@
 package de.dennishoersch.web.css;
 
 import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
 
 import de.dennishoersch.web.css.images.ImagesInliner;
 
 /**
  * Inlines all referenced images. Uses data-URIs for this purpose.
  * Images must be refered whether locally relative to the execution directory or via 'http://'...
+ * <p>The input is streamed from System.in or the files given as arguments to System.out.</p>
  *
  * @author hoersch
  */
@@ -32,10 +35,9 @@ public class InlineImages {
      * @throws IOException
      */
     public static void main(String[] args) throws IOException {
-        String css = CmdLineUtil.readArgumentsOrStdIn(args);
-
-        String result = ImagesInliner.inline(css);
-
-        System.out.println(result);
+        try (Reader css = CmdLineUtil.openArgumentsOrStdIn(args);
+                Writer result = CmdLineUtil.openStdOut()) {
+            ImagesInliner.inline(css, result);
+        }
     }
 }
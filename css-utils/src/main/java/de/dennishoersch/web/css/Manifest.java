@@ -0,0 +1,286 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Maps;
+
+/**
+ * Maps the logical names of output files to their fingerprinted names, see {@link Output}, as JSON object:
+ *
+ * <pre>
+ * {
+ *   "css/styles.css": "css/styles.3f2c9a7d1e0b5c84.css"
+ * }
+ * </pre>
+ *
+ * Both names are relative to the directory of the manifest. Entries of other files are kept when it is written again:
+ * the file is read again under a lock on <code>manifest.json.lock</code> and only the entries put since are changed,
+ * so several processes can share a manifest.
+ *
+ * @author hoersch
+ */
+final class Manifest {
+    static final String PROPERTY = "css-utils.manifest";
+
+    private static final Charset _CHARSET = Charsets.UTF_8;
+
+    // Guards the file lock, which is held by the whole process
+    private static final Object _LOCK = new Object();
+
+    private final Path _file;
+    private final Map<String, String> _entries;
+    // Put since the manifest was read, to be merged into the file
+    private final Map<String, String> _updates = Maps.newHashMap();
+
+    private Manifest(Path file, Map<String, String> entries) {
+        _file = file;
+        _entries = entries;
+    }
+
+    /**
+     * @return the manifest named by the system property or <code>null</code> if outputs are not fingerprinted
+     */
+    static Manifest configured() throws IOException {
+        String file = System.getProperty(PROPERTY);
+        return file == null || file.isEmpty() ? null : read(Paths.get(file));
+    }
+
+    /**
+     * @return the manifest with the entries of the file, empty if it does not exist yet
+     */
+    static Manifest read(Path file) throws IOException {
+        return new Manifest(file, readEntries(file));
+    }
+
+    Path file() {
+        return _file;
+    }
+
+    /**
+     * Records the fingerprinted name of the logical output file.
+     */
+    synchronized void put(Path file, Path fingerprinted) {
+        String name = relative(file);
+        String fingerprintedName = relative(fingerprinted);
+        _entries.put(name, fingerprintedName);
+        _updates.put(name, fingerprintedName);
+    }
+
+    /**
+     * @return a copy of all entries
+     */
+    synchronized ImmutableSortedMap<String, String> entries() {
+        return ImmutableSortedMap.copyOf(_entries);
+    }
+
+    /**
+     * Merges the entries put since the manifest was read into the current file, other entries are taken from the file.
+     * Writes into a temporary file first, so that readers never see a partial one.
+     */
+    synchronized void write() throws IOException {
+        Path directory = _file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        synchronized (_LOCK) {
+            try (FileChannel lockFile = FileChannel.open(_file.resolveSibling(_file.getFileName() + ".lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                FileLock lock = lockFile.lock();
+                try {
+                    Map<String, String> entries = readEntries(_file);
+                    entries.putAll(_updates);
+                    write(entries);
+                    _entries.clear();
+                    _entries.putAll(entries);
+                    _updates.clear();
+                } finally {
+                    lock.release();
+                }
+            }
+        }
+    }
+
+    private void write(Map<String, String> entries) throws IOException {
+        Path temp = Output.createTempFile(_file);
+        try {
+            try (Writer out = Files.newBufferedWriter(temp, _CHARSET)) {
+                out.write("{");
+                String separator = "\n";
+                for (Map.Entry<String, String> entry : entries.entrySet()) {
+                    out.write(separator);
+                    out.write("  ");
+                    writeString(entry.getKey(), out);
+                    out.write(": ");
+                    writeString(entry.getValue(), out);
+                    separator = ",\n";
+                }
+                out.write("\n}\n");
+            }
+            Files.move(temp, _file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static Map<String, String> readEntries(Path file) throws IOException {
+        Map<String, String> entries = Maps.newTreeMap();
+        if (Files.exists(file)) {
+            new JsonReader(new String(Files.readAllBytes(file), _CHARSET), file).readInto(entries);
+        }
+        return entries;
+    }
+
+    private String relative(Path file) {
+        Path directory = _file.toAbsolutePath().getParent();
+        String relative = directory.relativize(file.toAbsolutePath().normalize()).toString();
+        return relative.replace(file.getFileSystem().getSeparator(), "/");
+    }
+
+    private static void writeString(String value, Writer out) throws IOException {
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.write('\\');
+                out.write(c);
+            } else if (c < ' ') {
+                out.write(String.format("\\u%04x", (int) c));
+            } else {
+                out.write(c);
+            }
+        }
+        out.write('"');
+    }
+
+    /**
+     * Reads a JSON object with string values, which is all a manifest contains.
+     */
+    private static final class JsonReader {
+        private final String _json;
+        private final Path _file;
+        private int _position;
+
+        JsonReader(String json, Path file) {
+            _json = json;
+            _file = file;
+        }
+
+        void readInto(Map<String, String> entries) throws IOException {
+            expect('{');
+            if (peek() == '}') {
+                _position++;
+            } else {
+                do {
+                    String name = readString();
+                    expect(':');
+                    entries.put(name, readString());
+                } while (next() == ',');
+                _position--;
+                expect('}');
+            }
+            if (peek() != 0) {
+                throw error("end");
+            }
+        }
+
+        private String readString() throws IOException {
+            expect('"');
+            StringBuilder result = new StringBuilder();
+            while (_position < _json.length()) {
+                char c = _json.charAt(_position++);
+                if (c == '"') {
+                    return result.toString();
+                }
+                if (c != '\\') {
+                    result.append(c);
+                    continue;
+                }
+                if (_position >= _json.length()) {
+                    break;
+                }
+                char escaped = _json.charAt(_position++);
+                switch (escaped) {
+                case 'b':
+                    result.append('\b');
+                    break;
+                case 'f':
+                    result.append('\f');
+                    break;
+                case 'n':
+                    result.append('\n');
+                    break;
+                case 'r':
+                    result.append('\r');
+                    break;
+                case 't':
+                    result.append('\t');
+                    break;
+                case 'u':
+                    if (_position + 4 > _json.length()) {
+                        throw error("unicode escape");
+                    }
+                    try {
+                        result.append((char) Integer.parseInt(_json.substring(_position, _position + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw error("unicode escape");
+                    }
+                    _position += 4;
+                    break;
+                default:
+                    result.append(escaped);
+                }
+            }
+            throw error("'\"'");
+        }
+
+        private void expect(char expected) throws IOException {
+            if (next() != expected) {
+                throw error("'" + expected + "'");
+            }
+        }
+
+        /**
+         * @return the next character which is no whitespace, 0 at the end
+         */
+        private char next() {
+            char c = peek();
+            _position++;
+            return c;
+        }
+
+        private char peek() {
+            while (_position < _json.length() && Character.isWhitespace(_json.charAt(_position))) {
+                _position++;
+            }
+            return _position < _json.length() ? _json.charAt(_position) : 0;
+        }
+
+        private IOException error(String expected) {
+            return new IOException("Manifest '" + _file + "' is no JSON object of strings, expected " + expected + " at " + _position + "!");
+        }
+    }
+}
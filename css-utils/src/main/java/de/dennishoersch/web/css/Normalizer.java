@@ -16,9 +16,24 @@
 package de.dennishoersch.web.css;
 
 import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+import java.util.Set;
 
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.CharStreams;
+
+import de.dennishoersch.web.css.parser.DeclarationOrder;
+import de.dennishoersch.web.css.parser.Minifier;
+import de.dennishoersch.web.css.parser.ParseCache;
 import de.dennishoersch.web.css.parser.Parser;
+import de.dennishoersch.web.css.parser.Shorthands;
 import de.dennishoersch.web.css.parser.Stylesheet;
+import de.dennishoersch.web.css.parser.StylesheetBuilder;
+import de.dennishoersch.web.css.parser.ValuePasses;
 
 /**
  * Normalizes stylesheets such that rules with the same selector are combined into one rule and rules with the same styles are combined to one block.
@@ -55,24 +70,153 @@ import de.dennishoersch.web.css.parser.Stylesheet;
  *     background-color: red;
  * }
  * </pre>
+ * <p>Complete sets of longhands like <code>margin-top</code> to <code>margin-left</code> are merged into their
+ * shorthand if the system property <code>css-utils.merge-shorthands</code> is <code>true</code>, see
+ * {@link Shorthands}.</p>
+ * <p>Values are minified by the passes named in the system property <code>css-utils.minify</code>, separated by
+ * comma or <code>all</code>: <code>colors</code>, <code>numbers</code>, <code>zero-units</code>, <code>quotes</code>
+ * and <code>font-weight</code>, see {@link ValuePasses}.</p>
+ * <p>The styles of every rule are sorted into a canonical order, which compresses better, if the system property
+ * <code>css-utils.sort-declarations</code> is <code>true</code>, see {@link DeclarationOrder}.</p>
+ * <p>Parsed stylesheets are cached across runs in the directory named by the system property
+ * <code>css-utils.parse-cache</code>, see {@link #parseCache()}.</p>
  * <p>Reads the input to be parsed directly from System.in if no arguments are
  * given, otherwise all arguments have to refer existing files to be read and
  * concatenated.</p>
- * <p>Prints the result to System.out</p>
+ * <p>Prints the result to System.out or with <code>-o file</code> in front of the input files to the file, which is
+ * also compressed if the system property <code>css-utils.gzip</code> is <code>true</code> and fingerprinted if the
+ * system property <code>css-utils.manifest</code> names the manifest to record it in, see {@link Output}.</p>
  *
  * @author hoersch
  */
 public class Normalizer {
+    static final String MERGE_SHORTHANDS_PROPERTY = "css-utils.merge-shorthands";
+    static final String MINIFY_PROPERTY = "css-utils.minify";
+    static final String SORT_DECLARATIONS_PROPERTY = "css-utils.sort-declarations";
+
+    static final String PARSE_CACHE_PROPERTY = "css-utils.parse-cache";
+    static final String PARSE_CACHE_SIZE_PROPERTY = "css-utils.parse-cache.max-size";
+
+    private static final long _DEFAULT_PARSE_CACHE_SIZE = 256L << 20;
+
+    // Opened on first use, shared by all runs of the process
+    private static ParseCache _parseCache;
+    private static boolean _parseCacheOpened;
+
+    /**
+     * The system properties which enable optimizations of the result.
+     */
+    static final Set<String> OPTIONS = ImmutableSet.of(MERGE_SHORTHANDS_PROPERTY, MINIFY_PROPERTY, SORT_DECLARATIONS_PROPERTY);
 
     public static void main(String[] args) throws IOException {
-        String css = CmdLineUtil.readArgumentsOrStdIn(args);
+        Path file = CmdLineUtil.outputFile(args);
+        if (file == null) {
+            try (Reader css = CmdLineUtil.openArgumentsOrStdIn(args);
+                    Writer result = CmdLineUtil.openStdOut()) {
+                normalize(css, result);
+            }
+            return;
+        }
 
-        Stylesheet stylesheet = Parser.parse(css);
+        Manifest manifest = Manifest.configured();
+        Output output;
+        try (Reader css = CmdLineUtil.openArgumentsOrStdIn(CmdLineUtil.inputFiles(args));
+                Output result = Output.open(file, manifest)) {
+            output = result;
+            normalize(css, result.writer());
+            result.commit();
+        }
+        if (manifest != null) {
+            manifest.write();
+        }
+        System.err.println(output);
+    }
 
-        System.out.println(stylesheet);
+    /**
+     * Normalizes the stylesheet read from the reader and writes it followed by a line separator. The writer is not
+     * closed.
+     */
+    static void normalize(Reader css, Writer result) throws IOException {
+        normalize(css, result, System.getProperties());
     }
 
+    /**
+     * Like {@link #normalize(Reader, Writer)}, with the optimizations enabled by the given options instead of the
+     * system properties.
+     */
+    static void normalize(Reader css, Writer result, Properties options) throws IOException {
+        write(parse(css), result, options);
+    }
 
+    /**
+     * Parses the stylesheet read from the reader, with the {@link #parseCache()} if there is one.
+     */
+    static Stylesheet parse(Reader css) throws IOException {
+        return parse(css, parseCache());
+    }
 
+    static Stylesheet parse(Reader css, ParseCache cache) throws IOException {
+        if (cache != null) {
+            return cache.parse(CharStreams.toString(css));
+        }
+
+        StylesheetBuilder builder = new StylesheetBuilder();
+        Parser.parse(css, builder);
+        return builder.getStylesheet();
+    }
 
+    /**
+     * @return the cache of parsed stylesheets configured by the system properties, see
+     *         {@link #openParseCache(Properties)}. Opened once per process.
+     */
+    static synchronized ParseCache parseCache() throws IOException {
+        if (!_parseCacheOpened) {
+            _parseCache = openParseCache(System.getProperties());
+            _parseCacheOpened = true;
+        }
+        return _parseCache;
+    }
+
+    /**
+     * @return the cache of parsed stylesheets in the directory named by the property
+     *         <code>css-utils.parse-cache</code>, limited to <code>css-utils.parse-cache.max-size</code> bytes
+     *         (default 256 MB). <code>null</code> if not configured.
+     */
+    static ParseCache openParseCache(Properties properties) throws IOException {
+        String directory = properties.getProperty(PARSE_CACHE_PROPERTY, "");
+        if (directory.isEmpty()) {
+            return null;
+        }
+        String maxSize = properties.getProperty(PARSE_CACHE_SIZE_PROPERTY);
+        return new ParseCache(Paths.get(directory), maxSize == null ? _DEFAULT_PARSE_CACHE_SIZE : Long.parseLong(maxSize));
+    }
+
+    /**
+     * Writes the normalized stylesheet followed by a line separator. The writer is not closed.
+     */
+    static void write(Stylesheet stylesheet, Writer result) throws IOException {
+        write(stylesheet, result, System.getProperties());
+    }
+
+    static void write(Stylesheet stylesheet, Writer result, Properties options) throws IOException {
+        optimize(stylesheet, options).writeTo(result);
+        result.write(System.lineSeparator());
+    }
+
+    /**
+     * @param stylesheet
+     * @param options
+     *            the system properties or the options of a {@link DaemonClient}, see {@link #OPTIONS}
+     * @return the stylesheet with the optional optimizations applied, which are enabled by the options
+     */
+    static Stylesheet optimize(Stylesheet stylesheet, Properties options) {
+        Stylesheet result = Minifier.minify(stylesheet, ValuePasses.named(options.getProperty(MINIFY_PROPERTY, "")));
+        if (Boolean.parseBoolean(options.getProperty(MERGE_SHORTHANDS_PROPERTY))) {
+            result = Shorthands.merge(result);
+        }
+        if (Boolean.parseBoolean(options.getProperty(SORT_DECLARATIONS_PROPERTY))) {
+            result = DeclarationOrder.sort(result);
+        }
+        return result;
+    }
 }
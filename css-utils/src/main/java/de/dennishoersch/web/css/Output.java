@@ -0,0 +1,279 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.TeeOutputStream;
+
+import com.google.common.hash.Funnels;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * An output file, which is written in one streaming pass. If the system property <code>css-utils.gzip</code> is
+ * <code>true</code>, the content is compressed at the same time into a file with the same name and <code>.gz</code>
+ * appended, so a web server can deliver it precompressed. The bytes written to both are counted.
+ * <p>
+ * The output only replaces the file when it is committed by {@link #commit()}. Until then it is written to a temporary
+ * file, which is deleted if the output is closed without commit, so that a failed run never leaves a truncated file.
+ * </p>
+ * <p>
+ * With a {@link Manifest} the output is fingerprinted: the content is hashed while it is written and the file is named
+ * after the hash, like <code>styles.3f2c9a7d1e0b5c84.css</code>, so it can be cached forever. The temporary file is
+ * renamed to the fingerprinted name when the hash is known, or deleted if the fingerprinted file exists already.
+ * </p>
+ *
+ * @author hoersch
+ */
+final class Output implements Closeable {
+    static final String GZIP_PROPERTY = "css-utils.gzip";
+
+    private static final int _BUFFER_SIZE = 8192;
+    // Hex digits of the SHA-256 of the content
+    private static final int _FINGERPRINT_LENGTH = 16;
+
+    private final Path _file;
+    private final Manifest _manifest;
+    private final CountingOutputStream _raw;
+    private final CountingOutputStream _compressed;
+    private final Writer _writer;
+    private boolean _committed;
+
+    private final Path _rawTemp;
+    private final Path _compressedTemp;
+
+    // Only if fingerprinted
+    private final Hasher _hasher;
+    private Path _fingerprinted;
+    private boolean _unchanged;
+
+    private Output(Path file, boolean gzip, Manifest manifest) throws IOException {
+        _file = file;
+        _manifest = manifest;
+        _rawTemp = createTempFile(file);
+        OutputStream raw = Files.newOutputStream(_rawTemp);
+        if (manifest == null) {
+            _hasher = null;
+        } else {
+            _hasher = Hashing.sha256().newHasher();
+            raw = new TeeOutputStream(raw, Funnels.asOutputStream(_hasher));
+        }
+        _raw = new CountingOutputStream(raw);
+        if (!gzip) {
+            _compressedTemp = null;
+            _compressed = null;
+            _writer = CmdLineUtil.open(_raw);
+            return;
+        }
+
+        Path compressedTemp = null;
+        try {
+            compressedTemp = createTempFile(gzipped(file));
+            _compressed = new CountingOutputStream(new BufferedOutputStream(Files.newOutputStream(compressedTemp), _BUFFER_SIZE));
+            _writer = CmdLineUtil.open(new TeeOutputStream(_raw, new GZIPOutputStream(_compressed, _BUFFER_SIZE) {
+                {
+                    // Written once, delivered often
+                    def.setLevel(Deflater.BEST_COMPRESSION);
+                }
+            }));
+        } catch (IOException e) {
+            _raw.close();
+            delete(_rawTemp);
+            delete(compressedTemp);
+            throw e;
+        }
+        _compressedTemp = compressedTemp;
+    }
+
+    /**
+     * Opens the file, also compressed if enabled by the system property. Missing parent directories are created.
+     *
+     * @param file
+     * @param manifest
+     *            to record the fingerprinted file in, <code>null</code> if not to be fingerprinted
+     */
+    static Output open(Path file, Manifest manifest) throws IOException {
+        return open(file, Boolean.getBoolean(GZIP_PROPERTY), manifest);
+    }
+
+    static Output open(Path file, boolean gzip, Manifest manifest) throws IOException {
+        return new Output(file, gzip, manifest);
+    }
+
+    /**
+     * @return the file with <code>.gz</code> appended
+     */
+    static Path gzipped(Path file) {
+        return file.resolveSibling(file.getFileName() + ".gz");
+    }
+
+    /**
+     * @return the file with the first hex digits of the hash in front of its extension
+     */
+    static Path fingerprinted(Path file, HashCode hash) {
+        String name = file.getFileName().toString();
+        String fingerprint = hash.toString().substring(0, _FINGERPRINT_LENGTH);
+        int extension = name.lastIndexOf('.');
+        if (extension <= 0) {
+            return file.resolveSibling(name + "." + fingerprint);
+        }
+        return file.resolveSibling(name.substring(0, extension) + "." + fingerprint + name.substring(extension));
+    }
+
+    /**
+     * @return the writer to the file, which is closed with this output
+     */
+    Writer writer() {
+        return _writer;
+    }
+
+    /**
+     * @return the file, if fingerprinted the fingerprinted file after {@link #commit()}
+     */
+    Path file() {
+        return _fingerprinted == null ? _file : _fingerprinted;
+    }
+
+    /**
+     * @return whether the fingerprinted file existed already and was not written
+     */
+    boolean isUnchanged() {
+        return _unchanged;
+    }
+
+    /**
+     * @return the number of bytes written so far
+     */
+    long size() {
+        return _raw.getByteCount();
+    }
+
+    /**
+     * @return the number of compressed bytes written so far, complete after {@link #commit()}. <code>-1</code> if not
+     *         compressed.
+     */
+    long compressedSize() {
+        return _compressed == null ? -1 : _compressed.getByteCount();
+    }
+
+    /**
+     * Completes the output and moves it into place. If fingerprinted, moves it to the fingerprinted file unless that
+     * exists already and records it in the manifest.
+     */
+    void commit() throws IOException {
+        if (_committed) {
+            return;
+        }
+        _writer.close();
+        if (_manifest == null) {
+            move(_rawTemp, _file);
+            if (_compressedTemp != null) {
+                move(_compressedTemp, gzipped(_file));
+            }
+            _committed = true;
+            return;
+        }
+
+        Path fingerprinted = fingerprinted(_file, _hasher.hash());
+        _unchanged = Files.exists(fingerprinted) && (_compressedTemp == null || Files.exists(gzipped(fingerprinted)));
+        if (_unchanged) {
+            delete(_rawTemp);
+            delete(_compressedTemp);
+        } else {
+            move(_rawTemp, fingerprinted);
+            if (_compressedTemp != null) {
+                move(_compressedTemp, gzipped(fingerprinted));
+            }
+        }
+        _fingerprinted = fingerprinted;
+        _committed = true;
+        _manifest.put(_file, fingerprinted);
+    }
+
+    /**
+     * Closes the output. If it is not committed, the file is left as it was.
+     */
+    @Override
+    public void close() throws IOException {
+        if (_committed) {
+            return;
+        }
+        try {
+            _writer.close();
+        } finally {
+            delete(_rawTemp);
+            delete(_compressedTemp);
+        }
+    }
+
+    /**
+     * @return the file and its sizes
+     */
+    @Override
+    public String toString() {
+        String file = _fingerprinted == null ? _file.toString() : _file + " -> " + _fingerprinted.getFileName() + (_unchanged ? " (unchanged)" : "");
+        if (_compressed == null) {
+            return String.format("%s: %d bytes", file, size());
+        }
+        return String.format("%s: %d bytes, %d gzipped (%.1f%%)", file, size(), compressedSize(), 100.0 * compressedSize() / Math.max(1, size()));
+    }
+
+    /**
+     * Unlike {@link Files#createTempFile(Path, String, String, java.nio.file.attribute.FileAttribute...)} the file gets
+     * the default permissions, it becomes the output.
+     *
+     * @return a new temporary file next to the file, missing parent directories are created
+     */
+    static Path createTempFile(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        while (true) {
+            try {
+                return Files.createFile(parent.resolve("." + file.getFileName() + "." + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp"));
+            } catch (FileAlreadyExistsException e) {
+                // Try another name
+            }
+        }
+    }
+
+    private static void move(Path temp, Path file) throws IOException {
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            delete(temp);
+        }
+    }
+
+    private static void delete(Path temp) throws IOException {
+        if (temp != null) {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
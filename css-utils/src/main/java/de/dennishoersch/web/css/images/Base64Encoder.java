@@ -0,0 +1,89 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css.images;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * Encodes bytes as base64 straight into a writer. The memory needed is a fixed buffer, whatever the number of bytes.
+ *
+ * @author hoersch
+ */
+final class Base64Encoder {
+    private static final char[] _ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    // Multiple of 3, so that the chunks can be encoded independently
+    private static final int _CHUNK_SIZE = 3 * 1024;
+
+    private final char[] _chars = new char[_CHUNK_SIZE / 3 * 4];
+
+    /**
+     * Encodes the remaining bytes of the buffer.
+     *
+     * @param in
+     * @param result
+     * @throws IOException
+     */
+    void encode(ByteBuffer in, Writer result) throws IOException {
+        while (in.remaining() >= 3) {
+            int length = 0;
+            int n = Math.min(in.remaining() / 3, _chars.length / 4);
+            for (int i = 0; i < n; i++) {
+                int bits = (in.get() & 0xFF) << 16 | (in.get() & 0xFF) << 8 | (in.get() & 0xFF);
+                _chars[length++] = _ALPHABET[bits >>> 18];
+                _chars[length++] = _ALPHABET[(bits >>> 12) & 0x3F];
+                _chars[length++] = _ALPHABET[(bits >>> 6) & 0x3F];
+                _chars[length++] = _ALPHABET[bits & 0x3F];
+            }
+            result.write(_chars, 0, length);
+        }
+        if (in.hasRemaining()) {
+            int bits = (in.get() & 0xFF) << 16;
+            boolean two = in.hasRemaining();
+            if (two) {
+                bits |= (in.get() & 0xFF) << 8;
+            }
+            _chars[0] = _ALPHABET[bits >>> 18];
+            _chars[1] = _ALPHABET[(bits >>> 12) & 0x3F];
+            _chars[2] = two ? _ALPHABET[(bits >>> 6) & 0x3F] : '=';
+            _chars[3] = '=';
+            result.write(_chars, 0, 4);
+        }
+    }
+
+    /**
+     * Encodes the bytes of the stream.
+     *
+     * @param in
+     * @param result
+     * @throws IOException
+     */
+    void encode(InputStream in, Writer result) throws IOException {
+        byte[] bytes = new byte[_CHUNK_SIZE];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int n;
+        // The chunks are filled completely but the last one
+        while ((n = ByteStreams.read(in, bytes, 0, bytes.length)) > 0) {
+            buffer.clear().limit(n);
+            encode(buffer, result);
+        }
+    }
+}
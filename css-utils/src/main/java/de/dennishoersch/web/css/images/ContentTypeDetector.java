@@ -0,0 +1,204 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css.images;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.commons.codec.binary.StringUtils;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+
+import de.dennishoersch.web.css.images.resolver.URLContent;
+
+/**
+ * Detects the content type by the first bytes of the content, the same on every host. If the bytes are not known, the
+ * content type given by the resolver or else the one of the file extension is taken.
+ * <p>
+ * The content types of local files are cached as long as the files are not modified. Thread safe.
+ * </p>
+ *
+ * @author hoersch
+ */
+final class ContentTypeDetector {
+    private static final int _SNIFF_LENGTH = 256;
+
+    //@formatter:off
+    private static final Map<String, String> _EXTENSIONS = new ImmutableMap.Builder<String, String>()
+                    .put("png", "image/png")
+                    .put("gif", "image/gif")
+                    .put("jpg", "image/jpeg")
+                    .put("jpeg", "image/jpeg")
+                    .put("webp", "image/webp")
+                    .put("avif", "image/avif")
+                    .put("svg", "image/svg+xml")
+                    .put("ico", "image/x-icon")
+                    .put("cur", "image/x-icon")
+                    .put("bmp", "image/bmp")
+                    .put("woff", "font/woff")
+                    .put("woff2", "font/woff2")
+                    .put("ttf", "font/ttf")
+                    .put("otf", "font/otf")
+                    .put("eot", "application/vnd.ms-fontobject")
+                    .build();
+    //@formatter:on
+
+    private final Cache<Path, Detected> _detected = CacheBuilder.newBuilder().maximumSize(4096).build();
+
+    /**
+     * @param url
+     *            the content has been resolved from
+     * @param content
+     * @return the content type, <code>null</code> if unknown
+     * @throws IOException
+     */
+    String detect(String url, URLContent content) throws IOException {
+        Path path = content.getPath();
+        if (path == null) {
+            return detect(url, content, read(content));
+        }
+
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        long modified = attributes.lastModifiedTime().toMillis();
+        Detected detected = _detected.getIfPresent(path);
+        if (detected == null || detected._modified != modified || detected._size != attributes.size()) {
+            detected = new Detected(detect(path.toString(), content, read(content)), modified, attributes.size());
+            _detected.put(path, detected);
+        }
+        return detected._contentType;
+    }
+
+    private static String detect(String url, URLContent content, byte[] bytes) {
+        String contentType = sniff(bytes);
+        if (contentType == null) {
+            contentType = content.getContentType();
+        }
+        if (contentType == null) {
+            contentType = byExtension(url);
+        }
+        return contentType;
+    }
+
+    private static byte[] read(URLContent content) throws IOException {
+        byte[] bytes = new byte[_SNIFF_LENGTH];
+        int n;
+        try (InputStream in = content.getContent().openStream()) {
+            n = ByteStreams.read(in, bytes, 0, bytes.length);
+        }
+        return n == bytes.length ? bytes : Arrays.copyOf(bytes, n);
+    }
+
+    /**
+     * @return the content type of the given first bytes, <code>null</code> if not known
+     */
+    static String sniff(byte[] bytes) {
+        if (startsWith(bytes, 0, 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A)) {
+            return "image/png";
+        }
+        if (startsWith(bytes, 0, 'G', 'I', 'F', '8', '7', 'a') || startsWith(bytes, 0, 'G', 'I', 'F', '8', '9', 'a')) {
+            return "image/gif";
+        }
+        if (startsWith(bytes, 0, 0xFF, 0xD8, 0xFF)) {
+            return "image/jpeg";
+        }
+        if (startsWith(bytes, 0, 'R', 'I', 'F', 'F') && startsWith(bytes, 8, 'W', 'E', 'B', 'P')) {
+            return "image/webp";
+        }
+        if (startsWith(bytes, 4, 'f', 't', 'y', 'p', 'a', 'v', 'i', 'f')) {
+            return "image/avif";
+        }
+        if (startsWith(bytes, 0, 0, 0, 1, 0) || startsWith(bytes, 0, 0, 0, 2, 0)) {
+            return "image/x-icon";
+        }
+        if (startsWith(bytes, 0, 'B', 'M')) {
+            return "image/bmp";
+        }
+        if (startsWith(bytes, 0, 'w', 'O', 'F', 'F')) {
+            return "font/woff";
+        }
+        if (startsWith(bytes, 0, 'w', 'O', 'F', '2')) {
+            return "font/woff2";
+        }
+        if (startsWith(bytes, 0, 'O', 'T', 'T', 'O')) {
+            return "font/otf";
+        }
+        if (startsWith(bytes, 0, 0, 1, 0, 0)) {
+            return "font/ttf";
+        }
+        if (isSvg(bytes)) {
+            return "image/svg+xml";
+        }
+        return null;
+    }
+
+    private static boolean startsWith(byte[] bytes, int offset, int... prefix) {
+        if (bytes.length < offset + prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if ((bytes[offset + i] & 0xFF) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isSvg(byte[] bytes) {
+        String text = StringUtils.newStringUtf8(bytes).trim();
+        if (text.startsWith("\uFEFF")) {
+            text = text.substring(1).trim();
+        }
+        return text.startsWith("<svg") || ((text.startsWith("<?xml") || text.startsWith("<!")) && text.contains("<svg"));
+    }
+
+    private static String byExtension(String url) {
+        String name = url;
+        int end = name.length();
+        for (char c : new char[] { '?', '#' }) {
+            int i = name.indexOf(c);
+            if (i >= 0 && i < end) {
+                end = i;
+            }
+        }
+        name = name.substring(0, end);
+        int dot = name.lastIndexOf('.');
+        if (dot < 0 || name.indexOf('/', dot) >= 0) {
+            return null;
+        }
+        return _EXTENSIONS.get(name.substring(dot + 1).toLowerCase(Locale.ENGLISH));
+    }
+
+    private static class Detected {
+        final String _contentType;
+        final long _modified;
+        final long _size;
+
+        Detected(String contentType, long modified, long size) {
+            _contentType = contentType;
+            _modified = modified;
+            _size = size;
+        }
+    }
+}
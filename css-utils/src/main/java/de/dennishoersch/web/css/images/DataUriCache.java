@@ -0,0 +1,117 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css.images;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import org.apache.commons.codec.binary.StringUtils;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import de.dennishoersch.web.css.DiskCache;
+
+/**
+ * Caches the encoded images on disk, so that unchanged images need not be read and encoded again. An image is
+ * identified by its path, size and modification time. Entries written within {@value #_RACY_MILLIS} ms after the
+ * modification of the image might be outdated although size and modification time are the same, so for them the hash
+ * of the content is compared as well.
+ * <p>
+ * See {@link DiskCache} for eviction and sharing the cache between processes.
+ * </p>
+ *
+ * @author hoersch
+ */
+public class DataUriCache {
+    private static final int _VERSION = 2;
+    private static final long _RACY_MILLIS = 2000;
+    private static final HashFunction _CONTENT_HASH = Hashing.murmur3_128();
+
+    private final DiskCache _cache;
+
+    /**
+     * @param directory
+     *            created if it does not exist
+     * @param maxSize
+     *            maximum number of bytes of all cached images
+     * @throws IOException
+     */
+    public DataUriCache(Path directory, long maxSize) throws IOException {
+        _cache = new DiskCache(directory, "datauri", _VERSION, maxSize);
+    }
+
+    /**
+     * @param image
+     * @return content type and base64 encoded content as in a data URI, <code>null</code> if not cached
+     * @throws IOException
+     */
+    public String get(Path image) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(image, BasicFileAttributes.class);
+        Path entry = _cache.get(key(image, attributes));
+        if (entry == null) {
+            return null;
+        }
+
+        String cached;
+        try {
+            cached = StringUtils.newStringUsAscii(Files.readAllBytes(entry));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        // Header: time of writing and hash of the image
+        int timeEnd = cached.indexOf(' ');
+        int headerEnd = cached.indexOf('\n');
+        if (timeEnd < 0 || headerEnd < timeEnd) {
+            return null;
+        }
+        long written = Long.parseLong(cached.substring(0, timeEnd));
+        if (written - attributes.lastModifiedTime().toMillis() < _RACY_MILLIS) {
+            String hash = cached.substring(timeEnd + 1, headerEnd);
+            if (!hash.equals(hash(image))) {
+                return null;
+            }
+        }
+        return cached.substring(headerEnd + 1);
+    }
+
+    /**
+     * @param image
+     * @param payload
+     *            content type and base64 encoded content as in a data URI
+     * @throws IOException
+     */
+    public void put(Path image, String payload) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(image, BasicFileAttributes.class);
+        String entry = System.currentTimeMillis() + " " + hash(image) + "\n" + payload;
+        _cache.put(key(image, attributes), StringUtils.getBytesUsAscii(entry));
+    }
+
+    private static String key(Path image, BasicFileAttributes attributes) {
+        return Hashing.sha256().newHasher()
+                .putString(image.toAbsolutePath().normalize().toString())
+                .putLong(attributes.size())
+                .putLong(attributes.lastModifiedTime().toMillis())
+                .hash().toString();
+    }
+
+    private static String hash(Path image) throws IOException {
+        return com.google.common.io.Files.hash(image.toFile(), _CONTENT_HASH).toString();
+    }
+}
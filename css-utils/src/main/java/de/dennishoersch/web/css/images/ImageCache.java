@@ -0,0 +1,193 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css.images;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.codec.binary.StringUtils;
+
+/**
+ * Keeps the encoded images of URLs in memory, outside the heap, so that they need not be resolved, read and encoded
+ * again. The least recently used images are evicted when the total size exceeds the limit. URLs which could not be
+ * inlined are remembered as well, up to a fixed number and for a limited time only, the failure might be temporary.
+ * <p>
+ * The {@link ImagesInliner} keys remote images by their URL and local files by their resolved path and modification
+ * time, so a changed file is read again and relative URLs of different base directories don't collide.
+ * </p>
+ * <p>
+ * Thread safe.
+ * </p>
+ *
+ * @author hoersch
+ */
+public class ImageCache {
+    private static final int _MAX_NOT_INLINED = 1024;
+    private static final long _DEFAULT_NOT_INLINED_TTL = TimeUnit.MINUTES.toNanos(1);
+
+    private final long _maxSize;
+    private final long _notInlinedTtlNanos;
+    private long _size;
+
+    private final LinkedHashMap<String, ByteBuffer> _payloads = new LinkedHashMap<>(16, 0.75f, true);
+    // The expiry of every entry, as System.nanoTime()
+    private final LinkedHashMap<String, Long> _notInlined = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > _MAX_NOT_INLINED;
+        }
+    };
+
+    private long _hits;
+    private long _misses;
+    private long _evictions;
+
+    /**
+     * @param maxSize
+     *            maximum number of bytes of all cached images
+     */
+    public ImageCache(long maxSize) {
+        this(maxSize, _DEFAULT_NOT_INLINED_TTL, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param maxSize
+     *            maximum number of bytes of all cached images
+     * @param notInlinedTtl
+     *            how long URLs which could not be inlined are remembered
+     * @param unit
+     */
+    public ImageCache(long maxSize, long notInlinedTtl, TimeUnit unit) {
+        _maxSize = maxSize;
+        _notInlinedTtlNanos = unit.toNanos(notInlinedTtl);
+    }
+
+    /**
+     * Writes the data URI of the URL.
+     *
+     * @param url
+     *            or another key of the image
+     * @param result
+     * @return {@link Boolean#TRUE} if written, {@link Boolean#FALSE} if the URL could not be inlined before,
+     *         <code>null</code> if not cached
+     * @throws IOException
+     */
+    public Boolean writeTo(String url, Writer result) throws IOException {
+        ByteBuffer payload;
+        synchronized (this) {
+            Long expiry = _notInlined.get(url);
+            if (expiry != null) {
+                if (System.nanoTime() - expiry.longValue() < 0) {
+                    _hits++;
+                    return Boolean.FALSE;
+                }
+                _notInlined.remove(url);
+            }
+            payload = _payloads.get(url);
+            if (payload == null) {
+                _misses++;
+                return null;
+            }
+            _hits++;
+            payload = payload.duplicate();
+        }
+
+        result.write("data:");
+        char[] chars = new char[Math.min(payload.remaining(), 4096)];
+        while (payload.hasRemaining()) {
+            int n = Math.min(payload.remaining(), chars.length);
+            for (int i = 0; i < n; i++) {
+                chars[i] = (char) payload.get();
+            }
+            result.write(chars, 0, n);
+        }
+        return Boolean.TRUE;
+    }
+
+    /**
+     * @param url
+     * @param payload
+     *            content type and base64 encoded content, as in a data URI
+     */
+    public void put(String url, String payload) {
+        byte[] bytes = StringUtils.getBytesUsAscii(payload);
+        if (bytes.length > _maxSize) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes).flip();
+
+        synchronized (this) {
+            ByteBuffer replaced = _payloads.put(url, buffer.asReadOnlyBuffer());
+            if (replaced != null) {
+                _size -= replaced.capacity();
+            }
+            _size += bytes.length;
+            _notInlined.remove(url);
+
+            Iterator<ByteBuffer> leastRecentlyUsed = _payloads.values().iterator();
+            while (_size > _maxSize) {
+                _size -= leastRecentlyUsed.next().capacity();
+                leastRecentlyUsed.remove();
+                _evictions++;
+            }
+        }
+    }
+
+    /**
+     * Remembers that the URL could not be inlined, until the time to live of those entries has passed.
+     *
+     * @param url
+     */
+    public synchronized void putNotInlined(String url) {
+        _notInlined.put(url, Long.valueOf(System.nanoTime() + _notInlinedTtlNanos));
+    }
+
+    /**
+     * @return the number of lookups of cached URLs, including the ones which could not be inlined
+     */
+    public synchronized long getHits() {
+        return _hits;
+    }
+
+    /**
+     * @return the number of lookups of URLs which were not cached
+     */
+    public synchronized long getMisses() {
+        return _misses;
+    }
+
+    /**
+     * @return the number of images evicted to stay within the size limit
+     */
+    public synchronized long getEvictions() {
+        return _evictions;
+    }
+
+    /**
+     * @return the number of bytes of all cached images
+     */
+    public synchronized long getSize() {
+        return _size;
+    }
+}
@@ -15,25 +15,44 @@
  */
 package de.dennishoersch.web.css.images;
 
-import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.Reader;
 import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.SocketTimeoutException;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.List;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.io.output.NullWriter;
 
-import com.google.common.base.Joiner;
-import com.google.common.collect.Lists;
+import com.google.common.base.Throwables;
+import com.google.common.collect.LinkedHashMultiset;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
+import com.google.common.io.CharStreams;
 
 import de.dennishoersch.web.css.images.resolver.FilesystemPathResolver;
 import de.dennishoersch.web.css.images.resolver.HttpPathResolver;
+import de.dennishoersch.web.css.images.resolver.URLContent;
 import de.dennishoersch.web.css.images.resolver.URLPathResolver;
+import de.dennishoersch.web.css.metrics.Metrics;
+import de.dennishoersch.web.css.metrics.Phase;
 
 /**
  * Inlines all images in a stylesheet as data-URIs.
@@ -49,14 +68,34 @@ import de.dennishoersch.web.css.images.resolver.URLPathResolver;
 public class ImagesInliner {
     private static final java.util.logging.Logger logger = java.util.logging.Logger.getLogger(ImagesInliner.class.getName());
 
-    private static final Pattern _URL = Pattern.compile("url\\(([^\\)]*)\\)");
+    private static final String _URL_START = "url(";
 
-    private static final Joiner _LINE_JOINER = Joiner.on("\n");
+    private static final long _MAP_THRESHOLD = 64 * 1024;
+
+    // Like http: or data:, a single letter is a drive
+    private static final Pattern _SCHEME = Pattern.compile("[a-zA-Z][a-zA-Z0-9+.-]+:");
 
     private final URLPathResolver _pathResolver;
+    private final ContentTypeDetector _contentTypes;
+    private DataUriCache _cache;
+    private ImageCache _imageCache;
+    private ExecutorService _executor;
+    private long _timeoutNanos;
+    private InliningPolicy _policy;
 
     private ImagesInliner(URLPathResolver pathResolver) {
         _pathResolver = pathResolver;
+        _contentTypes = new ContentTypeDetector();
+    }
+
+    private ImagesInliner(ImagesInliner inliner) {
+        _pathResolver = inliner._pathResolver;
+        _contentTypes = inliner._contentTypes;
+        _cache = inliner._cache;
+        _imageCache = inliner._imageCache;
+        _executor = inliner._executor;
+        _timeoutNanos = inliner._timeoutNanos;
+        _policy = inliner._policy;
     }
 
     /**
@@ -74,9 +113,9 @@ public class ImagesInliner {
             }
 
             @Override
-            public Path resolve(String url) throws IOException {
+            public URLContent resolve(String url) throws IOException {
                 for (URLPathResolver resolver : _pathResolver) {
-                    Path resolved = resolver.resolve(url);
+                    URLContent resolved = resolver.resolve(url);
                     if (resolved != null) {
                         return resolved;
                     }
@@ -87,6 +126,61 @@ public class ImagesInliner {
         return new ImagesInliner(new MultipleTypePathResolver(pathResolver));
     }
 
+    /**
+     * @param cache
+     * @return a new ImagesInliner like this one, which takes the encoded images from the given cache
+     */
+    public ImagesInliner cachedIn(DataUriCache cache) {
+        ImagesInliner inliner = new ImagesInliner(this);
+        inliner._cache = cache;
+        return inliner;
+    }
+
+    /**
+     * Should be used if the same instance processes many stylesheets, the images of the URLs are not resolved again.
+     *
+     * @param cache
+     *            might be shared by several ImagesInliners, also with local files in different base directories
+     * @return a new ImagesInliner like this one, which keeps the encoded images in the given cache
+     */
+    public ImagesInliner cachedIn(ImageCache cache) {
+        ImagesInliner inliner = new ImagesInliner(this);
+        inliner._imageCache = cache;
+        return inliner;
+    }
+
+    /**
+     * The URLs of a stylesheet are collected first and then resolved and encoded in parallel on the given executor, so
+     * the stylesheet is held in memory completely. The result is the same as without executor, but URLs which take
+     * longer than the given timeout are left as they are. The timeout starts with the resolution of the stylesheet, so
+     * the executor should have enough threads for the URLs of a stylesheet. Downloads of the {@link HttpPathResolver} end at the
+     * timeout as well, so that a host which never responds does not keep the threads busy.
+     *
+     * @param executor
+     * @param timeout
+     * @param unit
+     * @return a new ImagesInliner like this one, which resolves the URLs on the given executor
+     */
+    public ImagesInliner resolvingOn(ExecutorService executor, long timeout, TimeUnit unit) {
+        ImagesInliner inliner = new ImagesInliner(this);
+        inliner._executor = executor;
+        inliner._timeoutNanos = unit.toNanos(timeout);
+        return inliner;
+    }
+
+    /**
+     * The images of a stylesheet are all resolved and encoded first and then inlined as the policy decides, so the
+     * stylesheet and its encoded images are held in memory completely.
+     *
+     * @param policy
+     * @return a new ImagesInliner like this one, which inlines only the images the given policy allows
+     */
+    public ImagesInliner applying(InliningPolicy policy) {
+        ImagesInliner inliner = new ImagesInliner(this);
+        inliner._policy = policy;
+        return inliner;
+    }
+
     /**
      * Inlines all images. They must be located whether as http URL or in the local filesystem.
      *
@@ -98,51 +192,386 @@ public class ImagesInliner {
         return with(new HttpPathResolver(), new FilesystemPathResolver()).process(stylesheet);
     }
 
+    /**
+     * Inlines all images while copying the stylesheet from the given reader to the given writer. They must be located
+     * whether as http URL or in the local filesystem.
+     *
+     * @param stylesheet
+     * @param result
+     * @throws IOException
+     */
+    public static void inline(Reader stylesheet, Writer result) throws IOException {
+        with(new HttpPathResolver(), new FilesystemPathResolver()).process(stylesheet, result);
+    }
+
     public String process(String stylesheet) throws IOException {
-        return inlineImages(new StringReader(stylesheet));
+        StringWriter result = new StringWriter(stylesheet.length());
+        process(new StringReader(stylesheet), result);
+        return result.toString();
     }
 
-    private String inlineImages(Reader stylesheet) throws IOException {
-        BufferedReader reader = new BufferedReader(stylesheet);
-        List<String> lines = Lists.newArrayList();
-        String line;
-        while ((line = reader.readLine()) != null) {
-            String line_ = inlineIfNeccessary(line);
-            lines.add(line_);
+    /**
+     * Inlines all images while copying the stylesheet from the given reader to the given writer.
+     * <p>
+     * The stylesheet is read only once. Everything but the inlined URLs is written unchanged and the images are encoded
+     * directly into the writer, so neither the stylesheet nor the images are held in memory completely.
+     * </p>
+     *
+     * @param stylesheet
+     * @param result
+     * @throws IOException
+     */
+    public void process(Reader stylesheet, Writer result) throws IOException {
+        boolean measured = Metrics.isEnabled();
+        long start = measured ? System.nanoTime() : 0;
+        long read = 0;
+        if (_executor != null || _policy != null) {
+            String collected = CharStreams.toString(stylesheet);
+            read = collected.length();
+            processCollected(collected, result);
+        } else {
+            Inlining inlining = new Inlining(result);
+            char[] buffer = new char[8192];
+            int n;
+            while ((n = stylesheet.read(buffer)) >= 0) {
+                inlining.write(buffer, 0, n);
+                read += n;
+            }
+            inlining.finish();
+        }
+        if (measured) {
+            Metrics.phase(Phase.INLINE, System.nanoTime() - start, read, -1);
         }
-        return _LINE_JOINER.join(lines);
     }
 
-    private String inlineIfNeccessary(String line) throws IOException {
-        String result = line;
-        Matcher matcher = _URL.matcher(line);
-        while (matcher.find()) {
-            String url = matcher.group(1);
-            String inlined = inlineUrl(url.replace("'", "").replace("\"", ""));
-            if (inlined != null) {
-                inlined = "url(data:" + inlined + ")";
-                result = StringUtils.replaceOnce(result, matcher.group(), inlined);
+    /**
+     * Inlines all images in everything written to the returned writer and passes it on to the given writer. Closing the
+     * returned writer closes the given writer.
+     *
+     * @param result
+     * @return writer to write the stylesheet to
+     */
+    public Writer processing(final Writer result) {
+        if (_executor != null || _policy != null) {
+            return new StringWriter() {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        processCollected(toString(), result);
+                    } finally {
+                        result.close();
+                    }
+                }
+            };
+        }
+        return new Inlining(result);
+    }
+
+    /**
+     * Collects the URLs of the stylesheet first, inlines them and then substitutes them in the stylesheet.
+     */
+    private void processCollected(String stylesheet, Writer result) throws IOException {
+        final Multiset<String> urls = LinkedHashMultiset.create();
+        new Inlining(NullWriter.NULL_WRITER) {
+            @Override
+            void inline(String url) {
+                urls.add(url);
             }
+        }.write(stylesheet);
+
+        final Map<String, String> inlined = _executor == null ? inlineSequentially(urls.elementSet()) : inlineConcurrently(urls.elementSet());
+        if (_policy != null) {
+            _policy.apply(urls, inlined);
         }
-        return result;
+
+        Inlining substituting = new Inlining(result) {
+            @Override
+            void inline(String url) throws IOException {
+                getResult().write(inlined.get(url));
+            }
+        };
+        substituting.write(stylesheet);
+        substituting.finish();
     }
 
-    private String inlineUrl(String url) throws IOException {
-        Path path = _pathResolver.resolve(url);
+    private Map<String, String> inlineSequentially(Set<String> urls) throws IOException {
+        Map<String, String> inlined = Maps.newLinkedHashMap();
+        for (String url : urls) {
+            StringWriter result = new StringWriter();
+            inlineIfNeccessary(url, result);
+            inlined.put(url, result.toString());
+        }
+        return inlined;
+    }
+
+    private Map<String, String> inlineConcurrently(Set<String> urls) throws IOException {
+        final long deadline = System.nanoTime() + _timeoutNanos;
+        Map<String, Future<String>> resolutions = Maps.newLinkedHashMap();
+        Map<String, String> inlined = Maps.newLinkedHashMap();
+        try {
+            for (final String url : urls) {
+                resolutions.put(url, _executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws IOException {
+                        // A cancelled download would block this thread otherwise
+                        HttpPathResolver.setDeadline(deadline);
+                        try {
+                            StringWriter inlined = new StringWriter();
+                            inlineIfNeccessary(url, inlined);
+                            return inlined.toString();
+                        } finally {
+                            HttpPathResolver.clearDeadline();
+                        }
+                    }
+                }));
+            }
+            for (Map.Entry<String, Future<String>> resolution : resolutions.entrySet()) {
+                inlined.put(resolution.getKey(), await(resolution.getKey(), resolution.getValue(), deadline));
+            }
+        } finally {
+            for (Future<String> resolution : resolutions.values()) {
+                resolution.cancel(true);
+            }
+        }
+        return inlined;
+    }
+
+    private static String await(String url, Future<String> resolution, long deadline) throws IOException {
+        try {
+            return resolution.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            logger.log(Level.WARNING, "Timed out inlining URL '" + url + "'!");
+            return url;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while inlining '" + url + "'!");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SocketTimeoutException) {
+                // The download ran into the deadline in the resolving thread
+                logger.log(Level.WARNING, "Timed out inlining URL '" + url + "'!");
+                return url;
+            }
+            Throwables.propagateIfPossible(e.getCause(), IOException.class);
+            throw new IllegalStateException(e.getCause());
+        }
+    }
 
+    /**
+     * Inlines all images in everything written to the returned writer. They must be located whether as http URL or in
+     * the local filesystem. See {@link #processing(Writer)}.
+     *
+     * @param result
+     * @return writer to write the stylesheet to
+     */
+    public static Writer inlining(Writer result) {
+        return with(new HttpPathResolver(), new FilesystemPathResolver()).processing(result);
+    }
+
+    /**
+     * Passes everything written on to the result, but the content of the URLs, which is held back until the URL is
+     * complete and then inlined.
+     */
+    private class Inlining extends Writer {
+        private final Writer _result;
+        // Number of characters of 'url(' already matched
+        private int _matched = 0;
+        private StringBuilder _url = null;
+
+        Inlining(Writer result) {
+            _result = result;
+        }
+
+        @Override
+        public void write(char[] buffer, int offset, int length) throws IOException {
+            int end = offset + length;
+            int unchanged = offset;
+            for (int i = offset; i < end; i++) {
+                char c = buffer[i];
+                if (_url == null) {
+                    if (c == _URL_START.charAt(_matched)) {
+                        _matched++;
+                    } else {
+                        _matched = c == _URL_START.charAt(0) ? 1 : 0;
+                    }
+                    if (_matched == _URL_START.length()) {
+                        _matched = 0;
+                        _result.write(buffer, unchanged, i + 1 - unchanged);
+                        unchanged = i + 1;
+                        _url = new StringBuilder();
+                    }
+                } else if (c == ')') {
+                    inline(_url.toString());
+                    _url = null;
+                    unchanged = i;
+                } else if (c == '\n' || c == '\r') {
+                    // URLs do not span multiple lines
+                    _result.append(_url);
+                    _url = null;
+                    unchanged = i;
+                } else {
+                    _url.append(c);
+                }
+            }
+            if (_url == null) {
+                _result.write(buffer, unchanged, end - unchanged);
+            }
+        }
+
+        void inline(String url) throws IOException {
+            inlineIfNeccessary(url, _result);
+        }
+
+        Writer getResult() {
+            return _result;
+        }
+
+        /**
+         * Writes an incomplete URL unchanged.
+         */
+        void finish() throws IOException {
+            if (_url != null) {
+                _result.append(_url);
+                _url = null;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            _result.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                finish();
+            } finally {
+                _result.close();
+            }
+        }
+    }
+
+    private void inlineIfNeccessary(String url, Writer result) throws IOException {
+        if (!Metrics.isEnabled()) {
+            inlineCached(url, result);
+            return;
+        }
+        long start = System.nanoTime();
+        boolean cached = inlineCached(url, result);
+        Metrics.resolved(url, System.nanoTime() - start, cached);
+    }
+
+    /**
+     * @return whether the URL was served from a cache
+     */
+    private boolean inlineCached(String url, Writer result) throws IOException {
+        String url_ = url.replace("'", "").replace("\"", "");
+
+        // Remote images are looked up before they are downloaded, local files after they are resolved
+        boolean remote = _SCHEME.matcher(url_).lookingAt();
+        if (remote && writeCached(url_, url, result)) {
+            return true;
+        }
+
+        URLContent content = _pathResolver.resolve(url_);
+
+        if (content == null) {
+            logger.log(Level.WARNING, "Could not inline URL '" + url_ + "'!");
+            // The file might be there in another base directory
+            notInlined(remote ? url_ : null, url, result);
+            return false;
+        }
+
+        String key = remote ? url_ : localKey(content.getPath());
+        if (!remote && writeCached(key, url, result)) {
+            return true;
+        }
+
+        // Only local files can be cached on disk
+        Path path = _cache == null ? null : content.getPath();
+        String payload = path == null ? null : _cache.get(path);
+        boolean cached = payload != null;
+        if (!cached) {
+            String contentType = _contentTypes.detect(url_, content);
+            if (contentType == null || !contentType.contains("image")) {
+                notInlined(key, url, result);
+                return false;
+            }
+
+            if (path == null && (_imageCache == null || key == null)) {
+                result.write("data:");
+                writeImage(content, contentType, result);
+                return false;
+            }
+            StringWriter encoded = new StringWriter();
+            writeImage(content, contentType, encoded);
+            payload = encoded.toString();
+            if (path != null) {
+                _cache.put(path, payload);
+            }
+        }
+
+        if (_imageCache != null && key != null) {
+            _imageCache.put(key, payload);
+        }
+        result.write("data:");
+        result.write(payload);
+        return cached;
+    }
+
+    /**
+     * @return whether the image of the key was written from the {@link ImageCache}, or the URL as it could not be
+     *         inlined
+     */
+    private boolean writeCached(String key, String url, Writer result) throws IOException {
+        if (_imageCache == null || key == null) {
+            return false;
+        }
+        Boolean cached = _imageCache.writeTo(key, result);
+        if (cached == null) {
+            return false;
+        }
+        if (!cached.booleanValue()) {
+            result.write(url);
+        }
+        return true;
+    }
+
+    /**
+     * @return the key of a local file in the {@link ImageCache}, <code>null</code> if the content is no local file
+     */
+    private static String localKey(Path path) throws IOException {
         if (path == null) {
-            logger.log(Level.WARNING, "Could not inline URL '" + url + "'!");
             return null;
         }
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        return path.toAbsolutePath().normalize() + "@" + attributes.lastModifiedTime().toMillis() + ":" + attributes.size();
+    }
 
-        String contentType = Files.probeContentType(path);
-        if (!contentType.contains("image")) {
-            return null;
+    private void notInlined(String key, String url, Writer result) throws IOException {
+        if (_imageCache != null && key != null) {
+            _imageCache.putNotInlined(key);
         }
+        result.write(url);
+    }
 
-        byte[] bytes = Files.readAllBytes(path);
+    /**
+     * Writes the content type and the base64 encoded image, as in a data URI. Large local files are mapped into memory
+     * instead of being read.
+     */
+    private static void writeImage(URLContent content, String contentType, Writer result) throws IOException {
+        result.write(contentType);
+        result.write(";base64,");
 
-        return contentType + ";base64," + org.apache.commons.codec.binary.Base64.encodeBase64String(bytes);
+        Path path = content.getPath();
+        if (path != null && Files.size(path) >= _MAP_THRESHOLD) {
+            try (FileChannel image = FileChannel.open(path, StandardOpenOption.READ)) {
+                new Base64Encoder().encode(image.map(FileChannel.MapMode.READ_ONLY, 0, image.size()), result);
+            }
+            return;
+        }
+        try (InputStream image = content.getContent().openStream()) {
+            new Base64Encoder().encode(image, result);
+        }
     }
 
 }
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css.images;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multiset;
+
+/**
+ * Decides which of the images of a stylesheet are inlined: images larger than a maximum size or of a content type
+ * which is not allowed are not inlined, and all inlined images of a stylesheet together must not exceed a budget.
+ * Images which are not inlined stay normal URLs.
+ * <p>
+ * The sizes are the ones of the encoded images. An image referenced multiple times counts for each reference against
+ * the budget, as it is inlined for each reference.
+ * </p>
+ *
+ * @author hoersch
+ */
+public final class InliningPolicy {
+    private static final java.util.logging.Logger logger = java.util.logging.Logger.getLogger(InliningPolicy.class.getName());
+
+    /**
+     * The order in which images are inlined until the budget is exhausted.
+     */
+    public enum Order {
+        SMALLEST_FIRST, MOST_REFERENCED_FIRST
+    }
+
+    /**
+     * Receives the decisions of the policy.
+     */
+    public interface Report {
+
+        void inlined(String url, String contentType, int size);
+
+        void skipped(String url, String reason);
+    }
+
+    private static final Report _LOGGING_REPORT = new Report() {
+        @Override
+        public void inlined(String url, String contentType, int size) {
+            logger.log(Level.FINE, "Inlined URL '" + url + "' (" + contentType + ", " + size + " bytes).");
+        }
+
+        @Override
+        public void skipped(String url, String reason) {
+            logger.log(Level.INFO, "Did not inline URL '" + url + "', " + reason + ".");
+        }
+    };
+
+    private long _maxImageSize = Long.MAX_VALUE;
+    private long _budget = Long.MAX_VALUE;
+    private Order _order = Order.SMALLEST_FIRST;
+    private Set<String> _allowed = ImmutableSet.of();
+    private Set<String> _denied = ImmutableSet.of();
+    private Report _report = _LOGGING_REPORT;
+
+    private InliningPolicy() {
+    }
+
+    private InliningPolicy(InliningPolicy policy) {
+        _maxImageSize = policy._maxImageSize;
+        _budget = policy._budget;
+        _order = policy._order;
+        _allowed = policy._allowed;
+        _denied = policy._denied;
+        _report = policy._report;
+    }
+
+    /**
+     * @return a policy which inlines all images and logs its decisions
+     */
+    public static InliningPolicy inlineAll() {
+        return new InliningPolicy();
+    }
+
+    /**
+     * @param maxImageSize
+     *            in bytes of the encoded image
+     * @return a new policy like this one, which does not inline larger images
+     */
+    public InliningPolicy withMaxImageSize(long maxImageSize) {
+        InliningPolicy policy = new InliningPolicy(this);
+        policy._maxImageSize = maxImageSize;
+        return policy;
+    }
+
+    /**
+     * @param budget
+     *            in bytes of all encoded images of a stylesheet
+     * @param order
+     *            in which images are inlined until the budget is exhausted
+     * @return a new policy like this one, which does not inline more than the budget
+     */
+    public InliningPolicy withBudget(long budget, Order order) {
+        InliningPolicy policy = new InliningPolicy(this);
+        policy._budget = budget;
+        policy._order = order;
+        return policy;
+    }
+
+    /**
+     * @param contentTypes
+     *            like <code>image/png</code> or <code>image/*</code>
+     * @return a new policy like this one, which inlines only images of the given content types
+     */
+    public InliningPolicy allowing(String... contentTypes) {
+        InliningPolicy policy = new InliningPolicy(this);
+        policy._allowed = ImmutableSet.copyOf(contentTypes);
+        return policy;
+    }
+
+    /**
+     * @param contentTypes
+     *            like <code>image/png</code> or <code>image/*</code>
+     * @return a new policy like this one, which does not inline images of the given content types
+     */
+    public InliningPolicy denying(String... contentTypes) {
+        InliningPolicy policy = new InliningPolicy(this);
+        policy._denied = ImmutableSet.copyOf(contentTypes);
+        return policy;
+    }
+
+    /**
+     * @param report
+     * @return a new policy like this one, which reports its decisions to the given report instead of the log
+     */
+    public InliningPolicy reportingTo(Report report) {
+        InliningPolicy policy = new InliningPolicy(this);
+        policy._report = report;
+        return policy;
+    }
+
+    /**
+     * Replaces the images which are not to be inlined by their URLs.
+     *
+     * @param references
+     *            of the URLs in the stylesheet
+     * @param inlined
+     *            the inlined form of each URL, which is the URL itself if it could not be inlined
+     */
+    void apply(Multiset<String> references, Map<String, String> inlined) {
+        List<Image> candidates = Lists.newArrayList();
+        for (Map.Entry<String, String> entry : inlined.entrySet()) {
+            String url = entry.getKey();
+            String data = entry.getValue();
+            if (data.equals(url) || !data.startsWith("data:")) {
+                continue;
+            }
+            Image image = new Image(url, data.substring("data:".length(), data.indexOf(';')), data.length(), references.count(url));
+            if (!isAllowed(image._contentType)) {
+                skip(image, "content type " + image._contentType + " is not allowed", inlined);
+            } else if (image._size > _maxImageSize) {
+                skip(image, image._size + " bytes exceed the maximum of " + _maxImageSize, inlined);
+            } else {
+                candidates.add(image);
+            }
+        }
+
+        Collections.sort(candidates, _order == Order.SMALLEST_FIRST ? Image.SMALLEST_FIRST : Image.MOST_REFERENCED_FIRST);
+        long remaining = _budget;
+        for (Image image : candidates) {
+            long size = (long) image._size * image._references;
+            if (size > remaining) {
+                skip(image, size + " bytes exceed the remaining budget of " + remaining, inlined);
+            } else {
+                remaining -= size;
+                _report.inlined(image._url, image._contentType, image._size);
+            }
+        }
+    }
+
+    private void skip(Image image, String reason, Map<String, String> inlined) {
+        inlined.put(image._url, image._url);
+        _report.skipped(image._url, reason);
+    }
+
+    private boolean isAllowed(String contentType) {
+        return (_allowed.isEmpty() || matches(_allowed, contentType)) && !matches(_denied, contentType);
+    }
+
+    private static boolean matches(Set<String> patterns, String contentType) {
+        for (String pattern : patterns) {
+            if (pattern.equals(contentType) || (pattern.endsWith("/*") && contentType.startsWith(pattern.substring(0, pattern.length() - 1)))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class Image {
+        static final Comparator<Image> SMALLEST_FIRST = new Comparator<Image>() {
+            @Override
+            public int compare(Image o1, Image o2) {
+                return Integer.compare(o1._size, o2._size);
+            }
+        };
+        static final Comparator<Image> MOST_REFERENCED_FIRST = new Comparator<Image>() {
+            @Override
+            public int compare(Image o1, Image o2) {
+                int byReferences = Integer.compare(o2._references, o1._references);
+                return byReferences != 0 ? byReferences : SMALLEST_FIRST.compare(o1, o2);
+            }
+        };
+
+        final String _url;
+        final String _contentType;
+        final int _size;
+        final int _references;
+
+        Image(String url, String contentType, int size, int references) {
+            _url = url;
+            _contentType = contentType;
+            _size = size;
+            _references = references;
+        }
+    }
+}
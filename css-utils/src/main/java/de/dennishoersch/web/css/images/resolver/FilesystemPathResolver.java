@@ -20,15 +20,30 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 
 /**
+ * Resolves URLs as paths of local files, relative ones against the working directory or the given base directory.
+ *
  * @author hoersch
  */
 public class FilesystemPathResolver implements URLPathResolver {
+    private final Path _baseDirectory;
+
+    public FilesystemPathResolver() {
+        this(null);
+    }
+
+    /**
+     * @param baseDirectory
+     *            to resolve relative paths against, <code>null</code> for the working directory
+     */
+    public FilesystemPathResolver(Path baseDirectory) {
+        _baseDirectory = baseDirectory;
+    }
 
     @Override
-    public Path resolve(String url) throws IOException {
-        Path path = Paths.get(url);
+    public URLContent resolve(String url) throws IOException {
+        Path path = _baseDirectory == null ? Paths.get(url) : _baseDirectory.resolve(url);
         if (path.toFile().exists()) {
-            return path;
+            return URLContent.of(path);
         }
         return null;
     }
@@ -16,40 +16,168 @@
 package de.dennishoersch.web.css.images.resolver;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
 import java.net.URL;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.net.URLConnection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 
-import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.ByteArrayOutputStream;
+
+import com.google.common.base.Throwables;
 
 /**
+ * Downloads the content of http URLs into memory. Concurrent requests for the same URL share one download.
+ * <p>
+ * A download fails with a {@link SocketTimeoutException} if it takes longer than the timeout, or than the deadline of
+ * the current thread if one is set by {@link #setDeadline(long)}. Cancelling a blocked download does not interrupt its
+ * socket, so without them a host which never responds would block the thread forever.
+ * </p>
  *
  * @author hoersch
  */
 public class HttpPathResolver implements URLPathResolver {
     private static final java.util.logging.Logger logger = java.util.logging.Logger.getLogger(HttpPathResolver.class.getName());
 
+    private static final long _DEFAULT_TIMEOUT_MILLIS = 30000;
+    private static final int _BUFFER_SIZE = 8192;
+
+    // System.nanoTime() at which the downloads of a thread have to end
+    private static final ThreadLocal<Long> _DEADLINE = new ThreadLocal<>();
+
+    private final ConcurrentMap<String, FutureTask<URLContent>> _downloads = new ConcurrentHashMap<>();
+    private final long _timeoutNanos;
+
+    /**
+     * With a timeout of 30 seconds.
+     */
+    public HttpPathResolver() {
+        this(_DEFAULT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param timeout
+     *            of a download, if no deadline is set
+     * @param unit
+     */
+    public HttpPathResolver(long timeout, TimeUnit unit) {
+        _timeoutNanos = unit.toNanos(timeout);
+    }
+
+    /**
+     * Downloads of the current thread have to end before the deadline, until {@link #clearDeadline()}.
+     *
+     * @param deadlineNanos
+     *            as {@link System#nanoTime()}
+     */
+    public static void setDeadline(long deadlineNanos) {
+        _DEADLINE.set(Long.valueOf(deadlineNanos));
+    }
+
+    public static void clearDeadline() {
+        _DEADLINE.remove();
+    }
+
     @Override
-    public Path resolve(String url) throws IOException {
+    public URLContent resolve(final String url) throws IOException {
         if (!url.startsWith("http")) {
             return null;
         }
-        return downloadToTmp(url);
-    }
 
-    private static Path downloadToTmp(String url) throws IOException {
+        final long deadline = deadline();
+        FutureTask<URLContent> download = new FutureTask<>(new Callable<URLContent>() {
+            @Override
+            public URLContent call() throws IOException {
+                return download(url, deadline);
+            }
+        });
+        FutureTask<URLContent> running = _downloads.putIfAbsent(url, download);
+        if (running == null) {
+            try {
+                download.run();
+            } finally {
+                _downloads.remove(url, download);
+            }
+            running = download;
+        }
+
         try {
-            URL weburl = new URL(url);
-            byte[] bytes = IOUtils.toByteArray(weburl.openStream());
+            // The running download might have been started with a later deadline
+            return running.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new SocketTimeoutException("Timed out waiting for '" + url + "'!");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for '" + url + "'!");
+        } catch (ExecutionException e) {
+            Throwables.propagateIfPossible(e.getCause(), IOException.class);
+            throw new IllegalStateException(e.getCause());
+        }
+    }
 
-            Path tempFile = Files.createTempFile("__" + HttpPathResolver.class.getSimpleName() + "_", "");
-            Files.write(tempFile, bytes);
+    private long deadline() {
+        Long deadline = _DEADLINE.get();
+        return deadline == null ? System.nanoTime() + _timeoutNanos : deadline.longValue();
+    }
 
-            return tempFile;
+    private static URLContent download(String url, long deadline) throws IOException {
+        try {
+            URLConnection connection = new URL(url).openConnection();
+            connection.setConnectTimeout(remainingMillis(url, deadline));
+            connection.setReadTimeout(remainingMillis(url, deadline));
+            try (InputStream in = connection.getInputStream()) {
+                connection.setReadTimeout(remainingMillis(url, deadline));
+                return URLContent.of(read(url, in, deadline), mediaType(connection.getContentType()));
+            }
         } catch (IllegalArgumentException e) {
             logger.log(Level.WARNING, "url of wrong format: '" + url + "'!", e);
             throw e;
         }
     }
+
+    /**
+     * Every read is limited by the read timeout, the checks in between limit a slowly trickling download.
+     */
+    private static byte[] read(String url, InputStream in, long deadline) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        byte[] buffer = new byte[_BUFFER_SIZE];
+        int n;
+        while ((n = in.read(buffer)) >= 0) {
+            content.write(buffer, 0, n);
+            remainingMillis(url, deadline);
+        }
+        return content.toByteArray();
+    }
+
+    /**
+     * @return the milliseconds up to the deadline, at least 1 as 0 means no timeout
+     * @throws SocketTimeoutException
+     *             if the deadline has passed
+     */
+    private static int remainingMillis(String url, long deadline) throws SocketTimeoutException {
+        long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        if (remaining <= 0) {
+            throw new SocketTimeoutException("Timed out downloading '" + url + "'!");
+        }
+        return (int) Math.min(Integer.MAX_VALUE, remaining);
+    }
+
+    /**
+     * @return the content type without parameters
+     */
+    private static String mediaType(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        int parameters = contentType.indexOf(';');
+        return (parameters < 0 ? contentType : contentType.substring(0, parameters)).trim();
+    }
 }
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css.images.resolver;
+
+import java.nio.file.Path;
+
+import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+
+/**
+ * The content a URL has been resolved to.
+ *
+ * @author hoersch
+ */
+public final class URLContent {
+    private final ByteSource _content;
+    private final String _contentType;
+    private final Path _path;
+
+    private URLContent(ByteSource content, String contentType, Path path) {
+        _content = content;
+        _contentType = contentType;
+        _path = path;
+    }
+
+    /**
+     * @param path
+     * @return the content of the local file
+     */
+    public static URLContent of(Path path) {
+        return new URLContent(Files.asByteSource(path.toFile()), null, path);
+    }
+
+    /**
+     * @param content
+     * @param contentType
+     *            might be <code>null</code> if unknown
+     * @return the content held in memory
+     */
+    public static URLContent of(byte[] content, String contentType) {
+        return new URLContent(ByteStreams.asByteSource(content), contentType, null);
+    }
+
+    /**
+     * @return the content
+     */
+    public ByteSource getContent() {
+        return _content;
+    }
+
+    /**
+     * @return the content type if known, otherwise <code>null</code>
+     */
+    public String getContentType() {
+        return _contentType;
+    }
+
+    /**
+     * @return the local file of the content, <code>null</code> if the content is not a local file
+     */
+    public Path getPath() {
+        return _path;
+    }
+}
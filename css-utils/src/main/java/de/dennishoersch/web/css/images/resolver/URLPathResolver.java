@@ -16,19 +16,18 @@
 package de.dennishoersch.web.css.images.resolver;
 
 import java.io.IOException;
-import java.nio.file.Path;
 
 /**
- * A resolver of URLs to local files.
+ * A resolver of URLs to their content.
  * @author hoersch
  */
 public interface URLPathResolver {
 
     /**
-     * Resolves the given URL to a local path. The content of the given URL might be downloaded to a temporary file.
+     * Resolves the given URL to its content. The content might be a local file or be downloaded into memory.
      * @param url
      * @throws IOException
-     * @return the path to the content of the given URL
+     * @return the content of the given URL, <code>null</code> if the URL can't be resolved by this resolver
      */
-    Path resolve(String url) throws IOException;
+    URLContent resolve(String url) throws IOException;
 }
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css.metrics;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Sums up the measurements and publishes them as MBean <code>de.dennishoersch.web.css:type=Metrics</code>.
+ *
+ * <pre>
+ * try (JmxMetrics metrics = JmxMetrics.register()) {
+ *     ...
+ * }
+ * </pre>
+ *
+ * @author hoersch
+ */
+public final class JmxMetrics implements MetricsListener, JmxMetricsMXBean, Closeable {
+    private static final String _NAME = "de.dennishoersch.web.css:type=Metrics";
+
+    private final Map<Phase, Totals> _phases = new EnumMap<>(Phase.class);
+    private final AtomicLong _rules = new AtomicLong();
+    private final AtomicLong _selectors = new AtomicLong();
+    private final AtomicLong _declarations = new AtomicLong();
+    // Before and after of each merge phase
+    private final AtomicLongArray _merged = new AtomicLongArray(4);
+    private final AtomicLong _imagesResolved = new AtomicLong();
+    private final AtomicLong _imageCacheHits = new AtomicLong();
+    private final AtomicLong _imageResolveNanos = new AtomicLong();
+
+    JmxMetrics() {
+        for (Phase phase : Phase.values()) {
+            _phases.put(phase, new Totals());
+        }
+    }
+
+    /**
+     * Registers new metrics as MBean and as {@link MetricsListener}.
+     *
+     * @return the metrics, closing them unregisters them again
+     */
+    public static JmxMetrics register() {
+        JmxMetrics metrics = new JmxMetrics();
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, new ObjectName(_NAME));
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register MBean '" + _NAME + "'!", e);
+        }
+        Metrics.add(metrics);
+        return metrics;
+    }
+
+    @Override
+    public void close() {
+        Metrics.remove(this);
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(_NAME));
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not unregister MBean '" + _NAME + "'!", e);
+        }
+    }
+
+    @Override
+    public void phase(Phase phase, long nanos, long input, long output) {
+        Totals totals = _phases.get(phase);
+        totals._count.incrementAndGet();
+        totals._nanos.addAndGet(nanos);
+        if (input > 0) {
+            totals._input.addAndGet(input);
+        }
+        if (output > 0) {
+            totals._output.addAndGet(output);
+        }
+    }
+
+    @Override
+    public void parsed(long rules, long selectors, long declarations) {
+        _rules.addAndGet(rules);
+        _selectors.addAndGet(selectors);
+        _declarations.addAndGet(declarations);
+    }
+
+    @Override
+    public void merged(Phase phase, int before, int after) {
+        int index = phase == Phase.MERGE ? 0 : 2;
+        _merged.addAndGet(index, before);
+        _merged.addAndGet(index + 1, after);
+    }
+
+    @Override
+    public void resolved(String url, long nanos, boolean cached) {
+        _imagesResolved.incrementAndGet();
+        _imageResolveNanos.addAndGet(nanos);
+        if (cached) {
+            _imageCacheHits.incrementAndGet();
+        }
+    }
+
+    @Override
+    public Map<String, Long> getPhaseCounts() {
+        ImmutableMap.Builder<String, Long> result = ImmutableMap.builder();
+        for (Map.Entry<Phase, Totals> entry : _phases.entrySet()) {
+            result.put(entry.getKey().name(), entry.getValue()._count.get());
+        }
+        return result.build();
+    }
+
+    @Override
+    public Map<String, Long> getPhaseMillis() {
+        ImmutableMap.Builder<String, Long> result = ImmutableMap.builder();
+        for (Map.Entry<Phase, Totals> entry : _phases.entrySet()) {
+            result.put(entry.getKey().name(), TimeUnit.NANOSECONDS.toMillis(entry.getValue()._nanos.get()));
+        }
+        return result.build();
+    }
+
+    @Override
+    public Map<String, Long> getPhaseInput() {
+        ImmutableMap.Builder<String, Long> result = ImmutableMap.builder();
+        for (Map.Entry<Phase, Totals> entry : _phases.entrySet()) {
+            result.put(entry.getKey().name(), entry.getValue()._input.get());
+        }
+        return result.build();
+    }
+
+    @Override
+    public Map<String, Long> getPhaseOutput() {
+        ImmutableMap.Builder<String, Long> result = ImmutableMap.builder();
+        for (Map.Entry<Phase, Totals> entry : _phases.entrySet()) {
+            result.put(entry.getKey().name(), entry.getValue()._output.get());
+        }
+        return result.build();
+    }
+
+    @Override
+    public long getRules() {
+        return _rules.get();
+    }
+
+    @Override
+    public long getSelectors() {
+        return _selectors.get();
+    }
+
+    @Override
+    public long getDeclarations() {
+        return _declarations.get();
+    }
+
+    @Override
+    public double getMergeHitRate() {
+        return hitRate(_merged.get(0), _merged.get(1));
+    }
+
+    @Override
+    public double getMergeByContentHitRate() {
+        return hitRate(_merged.get(2), _merged.get(3));
+    }
+
+    @Override
+    public long getImagesResolved() {
+        return _imagesResolved.get();
+    }
+
+    @Override
+    public long getImageCacheHits() {
+        return _imageCacheHits.get();
+    }
+
+    @Override
+    public double getImageResolveMillis() {
+        long resolved = _imagesResolved.get();
+        return resolved == 0 ? 0 : _imageResolveNanos.get() / 1e6 / resolved;
+    }
+
+    @Override
+    public void reset() {
+        for (Totals totals : _phases.values()) {
+            totals._count.set(0);
+            totals._nanos.set(0);
+            totals._input.set(0);
+            totals._output.set(0);
+        }
+        _rules.set(0);
+        _selectors.set(0);
+        _declarations.set(0);
+        for (int i = 0; i < _merged.length(); i++) {
+            _merged.set(i, 0);
+        }
+        _imagesResolved.set(0);
+        _imageCacheHits.set(0);
+        _imageResolveNanos.set(0);
+    }
+
+    private static double hitRate(long before, long after) {
+        return before == 0 ? 0 : (double) (before - after) / before;
+    }
+
+    private static class Totals {
+        private final AtomicLong _count = new AtomicLong();
+        private final AtomicLong _nanos = new AtomicLong();
+        private final AtomicLong _input = new AtomicLong();
+        private final AtomicLong _output = new AtomicLong();
+    }
+}
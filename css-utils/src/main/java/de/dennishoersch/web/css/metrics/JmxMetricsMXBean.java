@@ -0,0 +1,65 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css.metrics;
+
+import java.util.Map;
+
+/**
+ * The totals of {@link JmxMetrics} since the start or the last {@link #reset()}. Durations are in milliseconds, sizes
+ * in characters.
+ *
+ * @author hoersch
+ */
+public interface JmxMetricsMXBean {
+
+    /**
+     * @return how often each phase ran
+     */
+    Map<String, Long> getPhaseCounts();
+
+    Map<String, Long> getPhaseMillis();
+
+    Map<String, Long> getPhaseInput();
+
+    Map<String, Long> getPhaseOutput();
+
+    long getRules();
+
+    long getSelectors();
+
+    long getDeclarations();
+
+    /**
+     * @return the share of rules combined with another one with the same selector
+     */
+    double getMergeHitRate();
+
+    /**
+     * @return the share of rules combined with another one with the same content
+     */
+    double getMergeByContentHitRate();
+
+    long getImagesResolved();
+
+    long getImageCacheHits();
+
+    /**
+     * @return the average time to resolve an image
+     */
+    double getImageResolveMillis();
+
+    void reset();
+}
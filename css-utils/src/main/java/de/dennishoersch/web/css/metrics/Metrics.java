@@ -0,0 +1,119 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css.metrics;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.google.common.base.Splitter;
+
+/**
+ * Passes the measurements of the parser and the images inliner on to the registered {@link MetricsListener}s.
+ * <p>
+ * Nothing is measured while no listener is registered: the instrumented code checks {@link #isEnabled()} before it
+ * takes any time or counts anything.
+ * </p>
+ *
+ * @author hoersch
+ */
+public final class Metrics {
+    /**
+     * System property with the listeners to register by {@link #addConfigured()}.
+     */
+    public static final String PROPERTY = "css-utils.metrics";
+
+    private static final List<MetricsListener> _listeners = new CopyOnWriteArrayList<>();
+    private static volatile boolean _enabled;
+
+    private Metrics() {
+    }
+
+    public static synchronized void add(MetricsListener listener) {
+        _listeners.add(listener);
+        _enabled = true;
+    }
+
+    public static synchronized void remove(MetricsListener listener) {
+        _listeners.remove(listener);
+        _enabled = !_listeners.isEmpty();
+    }
+
+    /**
+     * Registers the listeners named in the system property <code>css-utils.metrics</code>, separated by comma:
+     * <code>jmx</code> for {@link JmxMetrics} and <code>jfr</code> for the flight recorder events, which need Java 11.
+     */
+    public static void addConfigured() {
+        for (String name : Splitter.on(',').trimResults().omitEmptyStrings().split(System.getProperty(PROPERTY, ""))) {
+            switch (name) {
+            case "jmx":
+                JmxMetrics.register();
+                break;
+            case "jfr":
+                try {
+                    add((MetricsListener) Class.forName(Metrics.class.getPackage().getName() + ".JfrMetrics").getDeclaredConstructor().newInstance());
+                } catch (ReflectiveOperationException | LinkageError e) {
+                    throw new IllegalStateException("Flight recorder events need Java 11!", e);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown metrics '" + name + "'!");
+            }
+        }
+    }
+
+    /**
+     * @return whether any listener is registered
+     */
+    public static boolean isEnabled() {
+        return _enabled;
+    }
+
+    /**
+     * See {@link MetricsListener#phase(Phase, long, long, long)}.
+     */
+    public static void phase(Phase phase, long nanos, long input, long output) {
+        for (MetricsListener listener : _listeners) {
+            listener.phase(phase, nanos, input, output);
+        }
+    }
+
+    /**
+     * See {@link MetricsListener#parsed(long, long, long)}.
+     */
+    public static void parsed(long rules, long selectors, long declarations) {
+        for (MetricsListener listener : _listeners) {
+            listener.parsed(rules, selectors, declarations);
+        }
+    }
+
+    /**
+     * See {@link MetricsListener#merged(Phase, int, int)}.
+     */
+    public static void merged(Phase phase, int before, int after) {
+        for (MetricsListener listener : _listeners) {
+            listener.merged(phase, before, after);
+        }
+    }
+
+    /**
+     * See {@link MetricsListener#resolved(String, long, boolean)}.
+     */
+    public static void resolved(String url, long nanos, boolean cached) {
+        for (MetricsListener listener : _listeners) {
+            listener.resolved(url, nanos, cached);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css.metrics;
+
+/**
+ * Receives what the parser and the images inliner measure, once registered with {@link Metrics#add(MetricsListener)}.
+ * The methods are called from the threads doing the work, so they must be thread-safe and should return quickly.
+ * <p>
+ * Sizes are in characters, <code>-1</code> if not known, for example when a stream is processed.
+ * </p>
+ *
+ * @author hoersch
+ */
+public interface MetricsListener {
+
+    /**
+     * @param phase
+     * @param nanos
+     *            the duration of the phase
+     * @param input
+     *            characters read by the phase
+     * @param output
+     *            characters written by the phase
+     */
+    void phase(Phase phase, long nanos, long input, long output);
+
+    /**
+     * The parts found while parsing a stylesheet, before normalizing.
+     *
+     * @param rules
+     * @param selectors
+     * @param declarations
+     */
+    void parsed(long rules, long selectors, long declarations);
+
+    /**
+     * The top level rules before and after {@link Phase#MERGE} or {@link Phase#MERGE_BY_CONTENT}.
+     *
+     * @param phase
+     * @param before
+     * @param after
+     */
+    void merged(Phase phase, int before, int after);
+
+    /**
+     * An image URL was resolved, inlined or not.
+     *
+     * @param url
+     * @param nanos
+     *            the duration including reading and encoding
+     * @param cached
+     *            whether it was served from a cache
+     */
+    void resolved(String url, long nanos, boolean cached);
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css.metrics;
+
+/**
+ * The phases of parsing, normalizing, writing and inlining a stylesheet, as reported to a {@link MetricsListener}.
+ *
+ * @author hoersch
+ */
+public enum Phase {
+    /** Removing comments and whitespace, measured separately only when parsing in parallel. */
+    STRIP,
+    /** Parsing the stylesheet into rules, including stripping if it is done while reading. */
+    PARSE,
+    /** Combining the rules with the same selector. */
+    MERGE,
+    /** Combining the rules with the same content. */
+    MERGE_BY_CONTENT,
+    /** Writing the stylesheet, including the time of the writer it is written to. */
+    SERIALIZE,
+    /** Inlining the images of a stylesheet. */
+    INLINE
+}
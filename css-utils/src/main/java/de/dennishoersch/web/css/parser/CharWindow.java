@@ -0,0 +1,149 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css.parser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Random access to the characters of a stream by their absolute position. Characters are read on demand and kept until
+ * they are released, so only the part between the released position and the furthest accessed position is held in
+ * memory.
+ *
+ * @author hoersch
+ */
+final class CharWindow {
+    private static final int _CHUNK_SIZE = 8192;
+
+    private final Reader _reader;
+    private char[] _chars;
+    // Absolute position of the first character held
+    private int _offset;
+    private int _length;
+    private int _released;
+    private boolean _eof;
+
+    CharWindow(Reader reader) {
+        _reader = reader;
+        _chars = new char[_CHUNK_SIZE];
+    }
+
+    /**
+     * A window on characters which are all available already.
+     */
+    CharWindow(char[] chars) {
+        _reader = null;
+        _chars = chars;
+        _length = chars.length;
+        _eof = true;
+    }
+
+    /**
+     * @param position
+     * @return whether there is a character at the given position, reads more characters if necessary
+     * @throws IOException
+     */
+    boolean has(int position) throws IOException {
+        while (position >= _offset + _length) {
+            if (!fill()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The character must be available, see {@link #has(int)}.
+     */
+    char charAt(int position) {
+        return _chars[position - _offset];
+    }
+
+    /**
+     * The characters must be available, see {@link #has(int)}.
+     */
+    String substring(int start, int end) {
+        return new String(_chars, start - _offset, end - start);
+    }
+
+    /**
+     * Like {@link #substring(int, int)}, but returns the interned string if there is one.
+     */
+    String substring(int start, int end, Symbols symbols) {
+        return symbols.intern(_chars, start - _offset, end - _offset);
+    }
+
+    /**
+     * The characters must be available, see {@link #has(int)}.
+     */
+    void copyTo(int start, int end, char[] destination, int destinationOffset) {
+        System.arraycopy(_chars, start - _offset, destination, destinationOffset, end - start);
+    }
+
+    /**
+     * The characters before the given position are not accessed anymore.
+     */
+    void release(int position) {
+        _released = Math.max(_released, position);
+    }
+
+    /**
+     * @return all characters, if the window is on characters which were all available from the beginning. Otherwise
+     *         <code>null</code>.
+     */
+    String source() {
+        return _reader == null ? new String(_chars) : null;
+    }
+
+    /**
+     * @return the number of characters read so far
+     */
+    int read() {
+        return _offset + _length;
+    }
+
+    void close() throws IOException {
+        if (_reader != null) {
+            _reader.close();
+        }
+    }
+
+    private boolean fill() throws IOException {
+        if (_eof) {
+            return false;
+        }
+        if (_chars.length - _length < _CHUNK_SIZE / 2) {
+            int released = _released - _offset;
+            if (released > 0) {
+                System.arraycopy(_chars, released, _chars, 0, _length - released);
+                _offset += released;
+                _length -= released;
+            }
+            // Grow early, so that the held characters are not moved again and again
+            if (_length > _chars.length / 2) {
+                _chars = Arrays.copyOf(_chars, 2 * _chars.length);
+            }
+        }
+        int n = _reader.read(_chars, _length, _chars.length - _length);
+        if (n < 0) {
+            _eof = true;
+            return false;
+        }
+        _length += n;
+        return true;
+    }
+}
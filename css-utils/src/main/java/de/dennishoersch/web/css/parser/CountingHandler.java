@@ -0,0 +1,66 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css.parser;
+
+import de.dennishoersch.web.css.metrics.Metrics;
+
+/**
+ * Counts the parts of a stylesheet while passing them on, to report them to the {@link Metrics}.
+ *
+ * @author hoersch
+ */
+final class CountingHandler implements CssHandler {
+    private final CssHandler _handler;
+    private long _rules;
+    private long _selectors;
+    private long _declarations;
+
+    CountingHandler(CssHandler handler) {
+        _handler = handler;
+    }
+
+    @Override
+    public void startRule() {
+        _rules++;
+        _handler.startRule();
+    }
+
+    @Override
+    public void selector(String selector) {
+        _selectors++;
+        _handler.selector(selector);
+    }
+
+    @Override
+    public void startBlock() {
+        _handler.startBlock();
+    }
+
+    @Override
+    public void declaration(String name, String value) {
+        _declarations++;
+        _handler.declaration(name, value);
+    }
+
+    @Override
+    public void endRule() {
+        _handler.endRule();
+    }
+
+    void report() {
+        Metrics.parsed(_rules, _selectors, _declarations);
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css.parser;
+
+/**
+ * Receives the parts of a stylesheet while it is parsed, see {@link Parser#parse(java.io.Reader, CssHandler)}.
+ * <p>
+ * Each rule is reported by {@link #startRule()}, its selectors, whether its declarations or - after
+ * {@link #startBlock()} - its sub rules (for example the rules of a @media query) and finally {@link #endRule()}.
+ * </p>
+ *
+ * @author hoersch
+ */
+public interface CssHandler {
+
+    /**
+     * A new rule starts. Its selectors follow.
+     */
+    void startRule();
+
+    /**
+     * @param selector one of the comma separated selectors of the current rule
+     */
+    void selector(String selector);
+
+    /**
+     * The current rule contains sub rules instead of declarations. They follow before the current rule ends.
+     */
+    void startBlock();
+
+    /**
+     * @param name
+     * @param value
+     */
+    void declaration(String name, String value);
+
+    /**
+     * The current rule ends.
+     */
+    void endRule();
+}
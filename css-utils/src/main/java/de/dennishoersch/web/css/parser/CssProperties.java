@@ -0,0 +1,204 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css.parser;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ListMultimap;
+
+/**
+ * What is known about properties: which longhands a shorthand sets, whether a value is <code>!important</code> and
+ * whether a value is vendor specific.
+ * <p>
+ * A shorthand always sets all of its longhands, those not given to their initial value. Vendor prefixed names have the
+ * longhands of their unprefixed name with the same prefix, for example <code>-webkit-transition</code> sets
+ * <code>-webkit-transition-duration</code>.
+ * </p>
+ *
+ * @author hoersch
+ */
+final class CssProperties {
+    private static final Pattern _VENDOR_PREFIX = Pattern.compile("-(moz|webkit|ms|o|wap|xv)-.*");
+    private static final List<String> _VENDOR_PREFIXES = ImmutableList.of("moz-", "webkit-", "ms-", "o-", "wap-", "xv-");
+    private static final Pattern _IMPORTANT = Pattern.compile("(.*?)\\s*!\\s*important\\s*", Pattern.DOTALL | Pattern.CASE_INSENSITIVE);
+
+    private static final Splitter _NAME_PARTS = Splitter.on('-');
+
+    private static final ImmutableSet<String> _CSS_WIDE_KEYWORDS = ImmutableSet.of("inherit", "initial", "unset", "revert", "revert-layer");
+
+    //@formatter:off
+    private static final ListMultimap<String, String> _LONGHANDS = new ImmutableListMultimap.Builder<String, String>()
+                    .putAll("margin", "margin-top", "margin-right", "margin-bottom", "margin-left")
+                    .putAll("padding", "padding-top", "padding-right", "padding-bottom", "padding-left")
+                    .putAll("inset", "top", "right", "bottom", "left")
+                    .putAll("border", "border-top", "border-right", "border-bottom", "border-left", "border-width", "border-style", "border-color", "border-image")
+                    .putAll("border-top", "border-top-width", "border-top-style", "border-top-color")
+                    .putAll("border-right", "border-right-width", "border-right-style", "border-right-color")
+                    .putAll("border-bottom", "border-bottom-width", "border-bottom-style", "border-bottom-color")
+                    .putAll("border-left", "border-left-width", "border-left-style", "border-left-color")
+                    .putAll("border-width", "border-top-width", "border-right-width", "border-bottom-width", "border-left-width")
+                    .putAll("border-style", "border-top-style", "border-right-style", "border-bottom-style", "border-left-style")
+                    .putAll("border-color", "border-top-color", "border-right-color", "border-bottom-color", "border-left-color")
+                    .putAll("border-image", "border-image-source", "border-image-slice", "border-image-width", "border-image-outset", "border-image-repeat")
+                    .putAll("border-radius", "border-top-left-radius", "border-top-right-radius", "border-bottom-right-radius", "border-bottom-left-radius")
+                    .putAll("outline", "outline-color", "outline-style", "outline-width")
+                    .putAll("background", "background-color", "background-image", "background-repeat", "background-attachment", "background-position", "background-size", "background-origin", "background-clip")
+                    .putAll("background-position", "background-position-x", "background-position-y")
+                    .putAll("font", "font-style", "font-variant", "font-weight", "font-stretch", "font-size", "line-height", "font-family", "font-size-adjust", "font-kerning", "font-optical-sizing", "font-variation-settings", "font-feature-settings", "font-language-override")
+                    .putAll("font-variant", "font-variant-ligatures", "font-variant-caps", "font-variant-alternates", "font-variant-numeric", "font-variant-east-asian", "font-variant-position", "font-variant-emoji")
+                    .putAll("list-style", "list-style-type", "list-style-position", "list-style-image")
+                    .putAll("overflow", "overflow-x", "overflow-y")
+                    .putAll("flex", "flex-grow", "flex-shrink", "flex-basis")
+                    .putAll("flex-flow", "flex-direction", "flex-wrap")
+                    .putAll("gap", "row-gap", "column-gap")
+                    .putAll("place-content", "align-content", "justify-content")
+                    .putAll("place-items", "align-items", "justify-items")
+                    .putAll("place-self", "align-self", "justify-self")
+                    .putAll("grid-gap", "grid-row-gap", "grid-column-gap")
+                    .putAll("columns", "column-width", "column-count")
+                    .putAll("column-rule", "column-rule-width", "column-rule-style", "column-rule-color")
+                    .putAll("text-decoration", "text-decoration-line", "text-decoration-style", "text-decoration-color", "text-decoration-thickness")
+                    .putAll("white-space", "white-space-collapse", "text-wrap-mode", "white-space-trim")
+                    .putAll("text-wrap", "text-wrap-mode", "text-wrap-style")
+                    .putAll("transition", "transition-property", "transition-duration", "transition-timing-function", "transition-delay")
+                    .putAll("animation", "animation-name", "animation-duration", "animation-timing-function", "animation-delay", "animation-iteration-count", "animation-direction", "animation-fill-mode", "animation-play-state")
+                    .build();
+
+    // Legacy names, which still set the same property as the standard name
+    private static final Map<String, String> _ALIASES = new ImmutableMap.Builder<String, String>()
+                    .put("grid-gap", "gap")
+                    .put("grid-row-gap", "row-gap")
+                    .put("grid-column-gap", "column-gap")
+                    .put("word-wrap", "overflow-wrap")
+                    .put("page-break-before", "break-before")
+                    .put("page-break-after", "break-after")
+                    .put("page-break-inside", "break-inside")
+                    .build();
+    //@formatter:on
+
+    private CssProperties() {
+    }
+
+    /**
+     * @param name
+     * @return the longhands directly set by the shorthand with the given name, empty if it is none
+     */
+    static List<String> longhands(String name) {
+        String lowerCase = name.toLowerCase(Locale.ENGLISH);
+        if (!lowerCase.startsWith("-") || !_VENDOR_PREFIX.matcher(lowerCase).matches()) {
+            return _LONGHANDS.get(lowerCase);
+        }
+
+        String prefix = lowerCase.substring(0, lowerCase.indexOf('-', 1) + 1);
+        List<String> longhands = _LONGHANDS.get(lowerCase.substring(prefix.length()));
+        String[] result = new String[longhands.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = prefix + longhands.get(i);
+        }
+        return Arrays.asList(result);
+    }
+
+    /**
+     * @param name
+     * @return the name without vendor prefix, lower case
+     */
+    static String unprefixed(String name) {
+        String lowerCase = name.toLowerCase(Locale.ENGLISH);
+        if (!lowerCase.startsWith("-") || !_VENDOR_PREFIX.matcher(lowerCase).matches()) {
+            return lowerCase;
+        }
+        return lowerCase.substring(lowerCase.indexOf('-', 1) + 1);
+    }
+
+    /**
+     * Aliases are kept apart from their standard names when styles are reduced, as they are fallbacks for older
+     * browsers, but they set the same property.
+     *
+     * @param name
+     *            lower case, without vendor prefix
+     * @return the standard name of a legacy alias like <code>grid-gap</code>, otherwise the name
+     */
+    static String standard(String name) {
+        String standard = _ALIASES.get(name);
+        return standard == null ? name : standard;
+    }
+
+    /**
+     * Which physical property a logical property like <code>inline-size</code> or <code>margin-block-start</code>
+     * sets, depends on the writing mode of the element.
+     *
+     * @param name
+     *            lower case, without vendor prefix
+     * @return whether the name has <code>inline</code> or <code>block</code> as a part
+     */
+    static boolean isLogical(String name) {
+        for (String part : _NAME_PARTS.split(name)) {
+            if ("inline".equals(part) || "block".equals(part)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static boolean isImportant(String value) {
+        return value.indexOf('!') >= 0 && _IMPORTANT.matcher(value).matches();
+    }
+
+    /**
+     * @return the value without <code>!important</code>
+     */
+    static String withoutImportant(String value) {
+        Matcher matcher = _IMPORTANT.matcher(value);
+        return matcher.matches() ? matcher.group(1) : value;
+    }
+
+    /**
+     * @return whether the value contains a vendor specific keyword or function, like <code>-webkit-box</code>. Those
+     *         are usually followed by a standard value as fallback.
+     */
+    static boolean hasVendorPrefixValue(String value) {
+        for (int i = value.indexOf('-'); i >= 0; i = value.indexOf('-', i + 1)) {
+            char before = i > 0 ? value.charAt(i - 1) : ' ';
+            if (!Character.isWhitespace(before) && before != ',' && before != '(') {
+                continue;
+            }
+            for (String prefix : _VENDOR_PREFIXES) {
+                if (value.startsWith(prefix, i + 1)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return whether the value is one of <code>inherit</code>, <code>initial</code> and the like, which can't be
+     *         part of a shorthand value
+     */
+    static boolean isCssWideKeyword(String value) {
+        return _CSS_WIDE_KEYWORDS.contains(value.toLowerCase(Locale.ENGLISH));
+    }
+}
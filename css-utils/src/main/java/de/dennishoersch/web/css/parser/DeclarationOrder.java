@@ -0,0 +1,154 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css.parser;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * Puts the styles of every rule into a canonical order, sorted by property name as far as the cascade allows. The
+ * same declarations are then written the same way in all rules, which gives DEFLATE more and longer back-references,
+ * and rules which only differed in the order of their styles are combined.
+ * <p>
+ * A style is only moved across styles it does not interact with: Styles keep their order if their names have the same
+ * root (<code>border-radius</code> and <code>border-top-left-radius</code>, <code>-webkit-transition</code> and
+ * <code>transition</code>), if one is a shorthand of the other, even indirectly (<code>font</code> and
+ * <code>line-height</code>), if one is an alias of the other (<code>grid-gap</code> and <code>gap</code>, also of
+ * their longhands), or if one of them is <code>all</code>, a browser hack like <code>*zoom</code> or a logical
+ * property like <code>inset-inline-start</code>, which may set any of the physical ones depending on the writing mode.
+ * So vendor prefixed styles and their fallbacks stay in order.
+ * </p>
+ *
+ * @author hoersch
+ */
+public final class DeclarationOrder {
+
+    private DeclarationOrder() {
+    }
+
+    /**
+     * @param stylesheet
+     * @return the stylesheet with the styles of all rules in canonical order, normalized again as rules may have the
+     *         same content now
+     */
+    public static Stylesheet sort(Stylesheet stylesheet) {
+        return new Stylesheet(Parser.normalize(sort(stylesheet.getRules())));
+    }
+
+    private static List<Rule> sort(List<Rule> rules) {
+        List<Rule> result = Lists.newArrayListWithCapacity(rules.size());
+        for (Rule rule : rules) {
+            if (!rule.getSubRules().isEmpty()) {
+                result.add(new Rule(rule.getSelector(), null, sort(rule.getSubRules())));
+                continue;
+            }
+            List<Style> styles = sortStyles(rule.getStyles());
+            result.add(styles == null ? rule : new Rule(rule.getSelector(), styles, null));
+        }
+        return result;
+    }
+
+    /**
+     * Insertion sort, which stops a style at the first style it interacts with.
+     *
+     * @return the sorted styles or <code>null</code> if they are in order already
+     */
+    static List<Style> sortStyles(List<Style> styles) {
+        List<Property> sorted = Lists.newArrayListWithCapacity(styles.size());
+        boolean moved = false;
+        for (Style style : styles) {
+            Property property = new Property(style);
+            int i = sorted.size();
+            while (i > 0 && sorted.get(i - 1).compareTo(property) > 0 && !sorted.get(i - 1).interactsWith(property)) {
+                i--;
+            }
+            moved |= i < sorted.size();
+            sorted.add(i, property);
+        }
+        if (!moved) {
+            return null;
+        }
+        List<Style> result = Lists.newArrayListWithCapacity(sorted.size());
+        for (Property property : sorted) {
+            result.add(property._style);
+        }
+        return result;
+    }
+
+    /**
+     * A style with what it needs to be sorted.
+     */
+    private static final class Property implements Comparable<Property> {
+        final Style _style;
+        final String _name;
+        // Lower case, without vendor prefix
+        final String _unprefixed;
+        final String _root;
+        final boolean _barrier;
+        // Built lazily, styles with the same root need not to be compared by it
+        private Set<String> _sets;
+
+        Property(Style style) {
+            _style = style;
+            _name = style.getName();
+            _unprefixed = CssProperties.unprefixed(_name);
+            int dash = _unprefixed.indexOf('-');
+            _root = dash > 0 ? _unprefixed.substring(0, dash) : _unprefixed;
+            _barrier = _name.startsWith("*") || _name.startsWith("_") || "all".equals(_unprefixed) || CssProperties.isLogical(_unprefixed);
+        }
+
+        boolean interactsWith(Property other) {
+            if (_barrier || other._barrier) {
+                return true;
+            }
+            // Custom properties are case sensitive and are no shorthands
+            if (_name.startsWith("--") || other._name.startsWith("--")) {
+                return _name.equals(other._name);
+            }
+            return _root.equals(other._root) || !Collections.disjoint(sets(), other.sets());
+        }
+
+        @Override
+        public int compareTo(Property other) {
+            int result = _unprefixed.compareTo(other._unprefixed);
+            return result != 0 ? result : _name.compareTo(other._name);
+        }
+
+        /**
+         * @return the property and all the longhands it sets, also indirectly
+         */
+        private Set<String> sets() {
+            if (_sets == null) {
+                Set<String> sets = Sets.newHashSet();
+                addWithLonghands(_unprefixed, sets);
+                _sets = sets;
+            }
+            return _sets;
+        }
+
+        private static void addWithLonghands(String name, Set<String> sets) {
+            if (sets.add(CssProperties.standard(name))) {
+                for (String longhand : CssProperties.longhands(name)) {
+                    addWithLonghands(longhand, sets);
+                }
+            }
+        }
+    }
+}
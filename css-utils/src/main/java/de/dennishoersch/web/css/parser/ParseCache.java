@@ -0,0 +1,116 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css.parser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Level;
+
+import com.google.common.hash.Hashing;
+
+import de.dennishoersch.web.css.DiskCache;
+
+/**
+ * Caches the parsed stylesheets on disk as {@link StylesheetSnapshot}s, keyed by a hash of the unparsed stylesheet. An
+ * unchanged stylesheet is loaded from its memory-mapped snapshot instead of being stripped, parsed and merged again.
+ * <p>
+ * The total size of the snapshots is limited, the least recently used ones are deleted first. Snapshots of another
+ * {@link #VERSION} are never read and age out the same way, see {@link DiskCache}.
+ * </p>
+ *
+ * @author hoersch
+ */
+public class ParseCache {
+    private static final java.util.logging.Logger logger = java.util.logging.Logger.getLogger(ParseCache.class.getName());
+
+    /**
+     * Has to be increased whenever the parser changes its result, so that older snapshots are not used anymore.
+     */
+    public static final int VERSION = 5;
+
+    private final DiskCache _cache;
+
+    /**
+     * @param directory
+     *            created if it does not exist
+     * @param maxSize
+     *            maximum number of bytes of all snapshots
+     * @throws IOException
+     */
+    public ParseCache(Path directory, long maxSize) throws IOException {
+        _cache = new DiskCache(directory, "snapshot", VERSION, maxSize);
+    }
+
+    /**
+     * See {@link Parser#parse(String)}.
+     *
+     * @param stylesheet
+     * @return the normalized stylesheet, from the cache if the same stylesheet has been parsed before
+     * @throws IOException
+     */
+    public Stylesheet parse(String stylesheet) throws IOException {
+        return parse(stylesheet, null);
+    }
+
+    /**
+     * See {@link Parser#parse(String, ForkJoinPool)}.
+     *
+     * @param stylesheet
+     * @param pool
+     *            to parse large stylesheets in parallel, <code>null</code> to parse in the current thread
+     * @return the normalized stylesheet, from the cache if the same stylesheet has been parsed before
+     * @throws IOException
+     */
+    public Stylesheet parse(String stylesheet, ForkJoinPool pool) throws IOException {
+        if (stylesheet == null) {
+            throw new NullPointerException("stylesheet");
+        }
+
+        String key = Hashing.sha256().newHasher().putInt(VERSION).putString(stylesheet).hash().toString();
+
+        Path snapshot = _cache.get(key);
+        if (snapshot != null) {
+            Stylesheet cached = load(snapshot);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        Stylesheet parsed = pool == null ? Parser.parse(stylesheet) : Parser.parse(stylesheet, pool);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(parsed.length() / 2);
+        StylesheetSnapshot.write(parsed, bytes);
+        _cache.put(key, bytes.toByteArray());
+        return parsed;
+    }
+
+    private static Stylesheet load(Path snapshot) {
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return StylesheetSnapshot.read(mapped);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not load snapshot '" + snapshot + "'!", e);
+            return null;
+        }
+    }
+}
@@ -15,19 +15,26 @@
  */
 package de.dennishoersch.web.css.parser;
 
-import java.util.ArrayList;
-import java.util.Collection;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
-import com.google.common.base.Predicate;
+import com.google.common.base.CharMatcher;
 import com.google.common.base.Splitter;
-import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
-import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Multimap;
+import com.google.common.collect.Sets;
+import com.google.common.hash.HashCode;
+import com.google.common.io.CharStreams;
+
+import de.dennishoersch.web.css.metrics.Metrics;
+import de.dennishoersch.web.css.metrics.Phase;
 
 
 /**
@@ -40,240 +47,560 @@ import com.google.common.collect.Multimap;
  * @author hoersch
  */
 public class Parser {
-    private static final Splitter _STYLE_SPLITTER = Splitter.on(";").omitEmptyStrings().trimResults();
     private static final Splitter _SELECTOR_SPLITTER = Splitter.on(",").omitEmptyStrings().trimResults();
+    private static final CharMatcher _STRING_TRIM = CharMatcher.inRange('\0', ' ');
+    private static final int _SHARD_SIZE = 1 << 16;
+
+    private final CharWindow _stylesheet;
+    private final CssHandler _handler;
+    private int _position;
+
+    // Offsets of the styles of the current rule: start, first colon and end of each style
+    private int[] _styleOffsets = new int[3 * 16];
+
+    private Parser(CharWindow stylesheet, CssHandler handler) {
+        _stylesheet = stylesheet;
+        _handler = handler;
+    }
 
     public static Stylesheet parse(String stylesheet) {
         if (stylesheet == null) {
             throw new NullPointerException("stylesheet");
         }
 
-        String stylesheet_ = Util.stripUnnecessary(stylesheet);
-        if (stylesheet_.contains("@import")) {
-            throw new IllegalArgumentException("Stylesheet must not contain any @import tag, but is '" + stylesheet + "'!");
+        StylesheetBuilder builder = new StylesheetBuilder();
+        try {
+            parse(new CharWindow(stylesheet.toCharArray()), builder);
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't happen, everything is in memory.", e);
         }
 
-        List<Rule> rules = parseIntern(stylesheet_);
-
-        return new Stylesheet(rules);
+        return builder.getStylesheet();
     }
 
-    private static List<Rule> parseIntern(String stylesheet) {
-        List<Rule> result = new ArrayList<>();
-        ParseResult parseResult = null;
+    /**
+     * Parses the stylesheet like {@link #parse(String)}, but the top level rules are parsed in parallel on the given
+     * pool. The result is the same.
+     * <p>The stripped stylesheet is split at the end of top level rules into shards of about {@value #_SHARD_SIZE}
+     * characters. The rules of all shards are merged in the order they appear in the stylesheet.</p>
+     *
+     * @param stylesheet
+     * @param pool
+     * @return the normalized stylesheet
+     */
+    public static Stylesheet parse(String stylesheet, ForkJoinPool pool) {
+        if (stylesheet == null) {
+            throw new NullPointerException("stylesheet");
+        }
 
-        for (int i = 0;; i = parseResult.getNext()) {
-            parseResult = parseNext(stylesheet, i);
-            if (parseResult == null) {
-                break;
-            }
-            result.addAll(parseResult.getRules());
+        boolean measured = Metrics.isEnabled();
+        long start = measured ? System.nanoTime() : 0;
+        char[] stripped;
+        try {
+            stripped = CharStreams.toString(Util.stripping(new CharWindow(stylesheet.toCharArray()), true)).toCharArray();
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't happen, everything is in memory.", e);
+        }
+        if (measured) {
+            long stripEnd = System.nanoTime();
+            Metrics.phase(Phase.STRIP, stripEnd - start, stylesheet.length(), stripped.length);
+            start = stripEnd;
         }
 
-        result = merge(result);
-        result = mergeByContent(result);
+        List<Rule> rules = pool.invoke(new ParseShards(stripped, shardEnds(stripped), 0, -1, measured));
+        if (measured) {
+            Metrics.phase(Phase.PARSE, System.nanoTime() - start, stripped.length, -1);
+        }
+        return stylesheet(rules);
+    }
 
-        return result;
+    /**
+     * Parses the stylesheet while it is read and reports its parts to the given handler, see {@link CssHandler}.
+     * <p>The parts are reported as they appear in the stylesheet, neither overridden styles are removed nor rules merged.
+     * Use the {@link StylesheetBuilder} to get the normalized stylesheet.</p>
+     * <p>Only the characters of the current rule are held in memory, not the whole stylesheet.</p>
+     *
+     * @param stylesheet
+     * @param handler
+     * @throws IOException
+     */
+    public static void parse(Reader stylesheet, CssHandler handler) throws IOException {
+        if (stylesheet == null) {
+            throw new NullPointerException("stylesheet");
+        }
+        parse(new CharWindow(stylesheet), handler);
     }
 
-    public static ParseResult parseNext(String stylesheet, int i) {
-        int next = -1;
-        if (i < stylesheet.length()) {
-            next = stylesheet.indexOf('{', i);
-            if (next < 0) {
-                System.err.println("keine klammer auf mehr");
-                return null;
-            }
+    private static void parse(CharWindow stylesheet, CssHandler handler) throws IOException {
+        CharWindow stripped = new CharWindow(Util.stripping(stylesheet, true));
+        if (!Metrics.isEnabled()) {
+            new Parser(stripped, handler).parseRules(false, -1);
+            return;
+        }
+
+        long start = System.nanoTime();
+        CountingHandler counting = new CountingHandler(handler);
+        new Parser(stripped, counting).parseRules(false, -1);
+        Metrics.phase(Phase.PARSE, System.nanoTime() - start, stylesheet.read(), stripped.read());
+        counting.report();
+    }
 
-            String selector = stylesheet.substring(i, next);
-            int k = next;
-            for (int count = 0; k < stylesheet.length(); k++) {
-                char c = stylesheet.charAt(k);
-                if (c == '{') {
-                    count++;
-                } else if (c == '}') {
-                    count--;
+    /**
+     * Scans the brace depth of the stripped stylesheet.
+     *
+     * @return the end positions of shards of about {@value #_SHARD_SIZE} characters, each after the closing brace of a
+     *         top level rule. The last one is the end of the stylesheet.
+     */
+    private static int[] shardEnds(char[] stylesheet) {
+        int[] ends = new int[stylesheet.length / _SHARD_SIZE + 1];
+        int count = 0;
+        int depth = 0;
+        int shardStart = 0;
+        for (int i = 0; i < stylesheet.length; i++) {
+            char c = stylesheet[i];
+            if (c == '{') {
+                depth++;
+            } else if (c == '}') {
+                depth--;
+                if (depth < 0) {
+                    // A closing brace on the top level is part of the next selector, don't split at all
+                    return new int[] { stylesheet.length };
                 }
-                if (count == 0) {
-                    break;
+                if (depth == 0 && i + 1 - shardStart >= _SHARD_SIZE) {
+                    ends[count++] = i + 1;
+                    shardStart = i + 1;
                 }
             }
+        }
+        if (count == 0 || ends[count - 1] < stylesheet.length) {
+            ends[count++] = stylesheet.length;
+        }
+        return Arrays.copyOf(ends, count);
+    }
 
-            String ruleset = stylesheet.substring(next + 1, k);
-
-            RuleParseResult ruleParseResult = parseRule(ruleset);
+    /**
+     * Parses the shards in the given range, halving the range until a single shard remains.
+     */
+    private static class ParseShards extends RecursiveTask<List<Rule>> {
+        private static final long serialVersionUID = 1L;
+
+        private final char[] _stylesheet;
+        private final int[] _shardEnds;
+        private final int _from;
+        private final int _to;
+        private final boolean _counted;
+
+        ParseShards(char[] stylesheet, int[] shardEnds, int from, int to, boolean counted) {
+            _stylesheet = stylesheet;
+            _shardEnds = shardEnds;
+            _from = from;
+            _to = to < 0 ? shardEnds.length : to;
+            _counted = counted;
+        }
 
-            List<Rule> rules = new ArrayList<>();
-            for (String selector_ : _SELECTOR_SPLITTER.split(selector)) {
-                rules.add(new Rule(selector_, ruleParseResult.getStyles(), ruleParseResult.getSubRules()));
+        @Override
+        protected List<Rule> compute() {
+            if (_to - _from == 1) {
+                int start = _from == 0 ? 0 : _shardEnds[_from - 1];
+                char[] shard = Arrays.copyOfRange(_stylesheet, start, _shardEnds[_from]);
+                StylesheetBuilder builder = new StylesheetBuilder();
+                CountingHandler counting = _counted ? new CountingHandler(builder) : null;
+                try {
+                    new Parser(new CharWindow(shard), counting == null ? builder : counting).parseRules(false, -1);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Can't happen, everything is in memory.", e);
+                }
+                if (counting != null) {
+                    counting.report();
+                }
+                return builder.getRules();
             }
-            return new ParseResult(rules, k + 1);
+
+            int middle = (_from + _to) >>> 1;
+            ParseShards first = new ParseShards(_stylesheet, _shardEnds, _from, middle, _counted);
+            first.fork();
+            List<Rule> second = new ParseShards(_stylesheet, _shardEnds, middle, _to, _counted).compute();
+            List<Rule> result = first.join();
+            result.addAll(second);
+            return result;
         }
-        return null;
     }
 
-    private static RuleParseResult parseRule(String ruleset) {
-        List<Rule> subRules = null;
-        List<Style> styles = null;
-        if (ruleset.contains("{")) {
-            subRules = parseIntern(ruleset);
-        } else {
-            styles = parseStyles(ruleset);
+    /**
+     * Parses the rules starting at the current position up to the end of the stylesheet or, if nested, up to the closing
+     * brace of the enclosing rule. The closing brace is not consumed.
+     *
+     * @param nested
+     * @param firstOpen position of the first opening brace if already known, otherwise -1
+     * @throws IOException
+     */
+    private void parseRules(boolean nested, int firstOpen) throws IOException {
+        int open = firstOpen;
+        while (_stylesheet.has(_position) && !(nested && _stylesheet.charAt(_position) == '}')) {
+            int start = _position;
+            _stylesheet.release(start);
+            if (open < 0) {
+                open = nextBrace(start, nested);
+            }
+            if (!_stylesheet.has(open) || _stylesheet.charAt(open) == '}') {
+                System.err.println("keine klammer auf mehr");
+                _position = open;
+                break;
+            }
+
+            _handler.startRule();
+            selectors(start, open);
+            _position = open + 1;
+            parseRule();
+            open = -1;
         }
-        return new RuleParseResult(styles, subRules);
     }
 
-    private static class RuleParseResult {
-        private final List<Style> _styles;
-        private final List<Rule> _subRules;
+    /**
+     * @return the position of the next opening brace or, if nested, of the next brace at all. The end of the stylesheet
+     *         if there is none.
+     * @throws IOException
+     */
+    private int nextBrace(int start, boolean nested) throws IOException {
+        int i = start;
+        for (; _stylesheet.has(i); i++) {
+            char c = _stylesheet.charAt(i);
+            if (c == '{' || (nested && c == '}')) {
+                break;
+            }
+        }
+        return i;
+    }
 
-        RuleParseResult(List<Style> styles, List<Rule> subRules) {
-            _styles = styles;
-            _subRules = subRules;
+    /**
+     * Parses the content of the rule starting at the current position and consumes the closing brace. The content is
+     * whether a list of styles or, if it contains another opening brace, a block of sub rules.
+     *
+     * @throws IOException
+     */
+    private void parseRule() throws IOException {
+        int count = 0;
+        int styleStart = _position;
+        int colon = -1;
+        int i = _position;
+        for (; _stylesheet.has(i); i++) {
+            char c = _stylesheet.charAt(i);
+            if (c == '{') {
+                _handler.startBlock();
+                parseRules(true, i);
+                if (_stylesheet.has(_position)) {
+                    _position++;
+                }
+                _handler.endRule();
+                return;
+            }
+            if (c == '}') {
+                break;
+            }
+            if (c == ';') {
+                count = addStyleOffsets(count, styleStart, colon, i);
+                styleStart = i + 1;
+                colon = -1;
+            } else if (c == ':' && colon < 0) {
+                colon = i;
+            }
         }
+        count = addStyleOffsets(count, styleStart, colon, i);
+        _position = _stylesheet.has(i) ? i + 1 : i;
+        styles(count);
+        _handler.endRule();
+    }
 
-        /**
-         * @return the styles
-         */
-        public List<Style> getStyles() {
-            return _styles;
+    /**
+     * Parses rule content which has been serialized already.
+     */
+    private static Rule parseRule(String selector, String ruleset) {
+        StylesheetBuilder builder = new StylesheetBuilder();
+        builder.startRule();
+        builder.selector(selector);
+        try {
+            new Parser(new CharWindow(ruleset.toCharArray()), builder).parseRule();
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't happen, everything is in memory.", e);
         }
+        return Iterables.getOnlyElement(builder.getStylesheet().getRules());
+    }
 
-        /**
-         * @return the subRules
-         */
-        public List<Rule> getSubRules() {
-            return _subRules;
+    private int addStyleOffsets(int count, int start, int colon, int end) {
+        if (count + 3 > _styleOffsets.length) {
+            _styleOffsets = Arrays.copyOf(_styleOffsets, 2 * _styleOffsets.length);
         }
+        _styleOffsets[count] = start;
+        _styleOffsets[count + 1] = colon;
+        _styleOffsets[count + 2] = end;
+        return count + 3;
     }
 
-    private static List<Style> parseStyles(String styles) {
-        Multimap<String, Style> reduced = LinkedHashMultimap.create();
-        for (String style_ : _STYLE_SPLITTER.split(styles)) {
-            Style style = new Style(style_);
-            reduced.put(style.getName(), style);
-        }
-
-        // Wenn keiner der Werte zu einem Style ein Vendor-Prefix enthält, dann
-        // kann der letzte alle anderen überschreiben
-        List<Style> result = Lists.newArrayList();
-        for (Map.Entry<String, Collection<Style>> entry : reduced.asMap().entrySet()) {
-            Collection<Style> values = entry.getValue();
-            if (Iterables.any(values, HasVendorPrefixValue.INSTANCE)) {
-                result.addAll(values);
-            } else {
-                result.add(Iterables.getLast(values));
+    private void selectors(int start, int end) {
+        int selectorStart = start;
+        for (int i = start; i <= end; i++) {
+            if (i == end || _stylesheet.charAt(i) == ',') {
+                int trimmedStart = trimStart(selectorStart, i, CharMatcher.WHITESPACE);
+                int trimmedEnd = trimEnd(trimmedStart, i, CharMatcher.WHITESPACE);
+                if (trimmedStart < trimmedEnd) {
+                    _handler.selector(_stylesheet.substring(trimmedStart, trimmedEnd));
+                }
+                selectorStart = i + 1;
             }
         }
-        return result;
     }
 
-    private enum HasVendorPrefixValue implements Predicate<Style> {
-        INSTANCE;
-        //@formatter:off
-        private static final List<String> _VENDOR_PREFIXES = new ImmutableList.Builder<String>()
-                        .add("-moz")
-                        .add("-webkit")
-                        .add("-ms")
-                        .add("-o")
-                        .add("-wap")
-                        .add("-xv")
-                        .build();
-        //@formatter:on
-        @Override
-        public boolean apply(Style input) {
-            return Iterables.any(_VENDOR_PREFIXES, startsWith(input.getValue()));
+    private void styles(int count) {
+        for (int i = 0; i < count; i += 3) {
+            int start = trimStart(_styleOffsets[i], _styleOffsets[i + 2], CharMatcher.WHITESPACE);
+            int end = trimEnd(start, _styleOffsets[i + 2], CharMatcher.WHITESPACE);
+            if (start == end) {
+                continue;
+            }
+            int colon = _styleOffsets[i + 1];
+            if (colon <= start || colon >= end) {
+                throw new IllegalStateException("Style is incorrect: " + _stylesheet.substring(start, end));
+            }
+            int nameStart = trimStart(start, colon, _STRING_TRIM);
+            int valueStart = trimStart(colon + 1, end, _STRING_TRIM);
+            String name = _stylesheet.substring(nameStart, trimEnd(nameStart, colon, _STRING_TRIM), Symbols.NAMES);
+            String value = _stylesheet.substring(valueStart, trimEnd(valueStart, end, _STRING_TRIM), Symbols.VALUES);
+            _handler.declaration(name, value);
         }
+    }
 
-        private static Predicate<String> startsWith(final String string) {
-            return new Predicate<String>() {
+    private int trimStart(int start, int end, CharMatcher trim) {
+        int i = start;
+        while (i < end && trim.matches(_stylesheet.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
 
-                @Override
-                public boolean apply(String input) {
-                    return string.startsWith(input);
-                }
-            };
+    private int trimEnd(int start, int end, CharMatcher trim) {
+        int i = end;
+        while (i > start && trim.matches(_stylesheet.charAt(i - 1))) {
+            i--;
         }
+        return i;
     }
 
-    private static class ParseResult {
+    /**
+     * Removes the styles which are overridden completely: by a later one with the same name or by a later shorthand,
+     * see {@link CssProperties}. A shorthand is also overridden by later styles for all of its longhands.
+     * <p>Styles with <code>!important</code> are only overridden by later ones with <code>!important</code>, but
+     * override all other styles of their properties, also later ones.</p>
+     * <p>If a value of a property contains a vendor prefix, all styles with the name of the property are kept and
+     * override nothing. The others are fallbacks for it.</p>
+     * <p>The remaining styles keep their order.</p>
+     */
+    static List<Style> reduceStyles(List<Style> styles) {
+        if (styles.size() < 2) {
+            return styles;
+        }
+
+        Set<String> withFallbacks = Sets.newHashSet();
+        Map<String, Boolean> importantSet = Maps.newHashMap();
+        for (Style style : styles) {
+            if (CssProperties.hasVendorPrefixValue(style.getValue())) {
+                withFallbacks.add(style.getName());
+            }
+        }
+        for (Style style : styles) {
+            if (!withFallbacks.contains(style.getName()) && CssProperties.isImportant(style.getValue())) {
+                setBy(style.getName(), true, importantSet);
+            }
+        }
 
-        private final List<Rule> _rules;
-        private final int _next;
+        // From the last to the first style, the properties set by the later styles and whether by an important one
+        Map<String, Boolean> set = Maps.newHashMap();
+        Style[] kept = new Style[styles.size()];
+        for (int i = styles.size() - 1; i >= 0; i--) {
+            Style style = styles.get(i);
+            String name = style.getName();
+            if (withFallbacks.contains(name)) {
+                kept[i] = style;
+                continue;
+            }
+            boolean important = CssProperties.isImportant(style.getValue());
+            if (isSet(name, important, set) || (!important && isSet(name, true, importantSet))) {
+                continue;
+            }
+            kept[i] = style;
+            setBy(name, important, set);
+        }
 
-        /**
-         * @param rules
-         * @param next
-         */
-        public ParseResult(List<Rule> rules, int next) {
-            this._rules = rules;
-            this._next = next;
+        List<Style> result = Lists.newArrayListWithCapacity(styles.size());
+        for (Style style : kept) {
+            if (style != null) {
+                result.add(style);
+            }
         }
+        return result;
+    }
 
-        /**
-         * @return the rules
-         */
-        public List<Rule> getRules() {
-            return _rules;
+    /**
+     * @return whether the property or all of its longhands are set, by an important style if the given one is important
+     */
+    private static boolean isSet(String name, boolean important, Map<String, Boolean> set) {
+        Boolean setImportant = set.get(name);
+        if (setImportant != null && (setImportant.booleanValue() || !important)) {
+            return true;
         }
+        List<String> longhands = CssProperties.longhands(name);
+        if (longhands.isEmpty()) {
+            return false;
+        }
+        for (String longhand : longhands) {
+            if (!isSet(longhand, important, set)) {
+                return false;
+            }
+        }
+        return true;
+    }
 
-        /**
-         * @return the next
-         */
-        public int getNext() {
-            return _next;
+    private static void setBy(String name, boolean important, Map<String, Boolean> set) {
+        Boolean setImportant = set.get(name);
+        if (setImportant == null || (important && !setImportant.booleanValue())) {
+            set.put(name, Boolean.valueOf(important));
+        }
+        for (String longhand : CssProperties.longhands(name)) {
+            setBy(longhand, important, set);
         }
+    }
 
+    /**
+     * Combines rules with the same selector and then rules with the same content.
+     */
+    static List<Rule> normalize(List<Rule> rules) {
+        List<Rule> result = merge(rules);
+        result = mergeByContent(result);
+        return result;
+    }
+
+    /**
+     * Normalizes the top level rules, see {@link #normalize(List)}, and reports the merge phases if measured.
+     */
+    static Stylesheet stylesheet(List<Rule> rules) {
+        if (!Metrics.isEnabled()) {
+            return new Stylesheet(normalize(rules));
+        }
+
+        long start = System.nanoTime();
+        List<Rule> merged = merge(rules);
+        long mergeEnd = System.nanoTime();
+        Metrics.phase(Phase.MERGE, mergeEnd - start, -1, -1);
+        Metrics.merged(Phase.MERGE, rules.size(), merged.size());
+
+        List<Rule> result = mergeByContent(merged);
+        Metrics.phase(Phase.MERGE_BY_CONTENT, System.nanoTime() - mergeEnd, -1, -1);
+        Metrics.merged(Phase.MERGE_BY_CONTENT, merged.size(), result.size());
+        return new Stylesheet(result);
     }
 
     private static List<Rule> merge(List<Rule> rules) {
         List<Rule> result = Lists.newArrayList();
 
-        Map<String, StringBuilder> mergedRules = Maps.newLinkedHashMap();
+        Map<String, List<Rule>> mergedRules = Maps.newLinkedHashMap();
 
         for (Rule rule : rules) {
-            mergeRules(rule, mergedRules);
+            List<Rule> sameSelector = mergedRules.get(rule.getSelector());
+            if (sameSelector == null) {
+                sameSelector = Lists.newArrayList();
+                mergedRules.put(rule.getSelector(), sameSelector);
+            }
+            sameSelector.add(rule);
         }
 
-        for (Map.Entry<String, StringBuilder> entry : mergedRules.entrySet()) {
-            String ruleset = entry.getValue().toString();
-            RuleParseResult ruleParseResult = parseRule(ruleset);
-            result.add(new Rule(entry.getKey(), ruleParseResult.getStyles(), ruleParseResult.getSubRules()));
+        for (Map.Entry<String, List<Rule>> entry : mergedRules.entrySet()) {
+            result.add(mergeRules(entry.getKey(), entry.getValue()));
         }
         return result;
     }
 
-    private static void mergeRules(Rule rule, Map<String, StringBuilder> mergedRules) {
-        StringBuilder styles = mergedRules.get(rule.getSelector());
-        if (styles == null) {
-            styles = new StringBuilder();
-            mergedRules.put(rule.getSelector(), styles);
+    private static Rule mergeRules(String selector, List<Rule> rules) {
+        if (rules.size() == 1) {
+            return rules.get(0);
         }
+
         // erstmal nur alles anhängen
-        // Überschriebene werden durch Rule automatisch beachtet
-        styles.append(rule.getContent());
+        // Überschriebene werden beim Reduzieren beachtet
+        List<Style> styles = Lists.newArrayList();
+        List<Rule> subRules = Lists.newArrayList();
+        for (Rule rule : rules) {
+            styles.addAll(rule.getStyles());
+            subRules.addAll(rule.getSubRules());
+        }
+
+        if (subRules.isEmpty()) {
+            return new Rule(selector, reduceStyles(styles), null);
+        }
+        if (styles.isEmpty()) {
+            return new Rule(selector, null, mergeSubRules(subRules));
+        }
+
+        // Styles mixed with sub rules are not valid. What comes out is only defined by the serialized form.
+        StringBuilder ruleset = new StringBuilder();
+        for (Rule rule : rules) {
+            ruleset.append(rule.getContent());
+        }
+        return parseRule(selector, ruleset.toString());
+    }
+
+    /**
+     * Merges the sub rules of rules with the same selector. Sub rules which have been merged by content before are
+     * separated again, so that they might be merged with the sub rules of the other rules.
+     */
+    private static List<Rule> mergeSubRules(List<Rule> subRules) {
+        List<Rule> result = Lists.newArrayList();
+        for (Rule rule : subRules) {
+            for (String selector : _SELECTOR_SPLITTER.split(rule.getSelector())) {
+                result.add(new Rule(selector, rule.getStyles(), rule.getSubRules()));
+            }
+        }
+
+        return normalize(result);
     }
 
     private static List<Rule> mergeByContent(List<Rule> rules) {
         List<Rule> result = Lists.newArrayList();
 
-        Map<String, StringBuilder> mergedRules = Maps.newLinkedHashMap();
+        // Rules with the same content in order of appearance, found by the fingerprints of their content
+        List<List<Rule>> mergedRules = Lists.newArrayList();
+        Map<HashCode, List<List<Rule>>> byFingerprint = Maps.newHashMap();
 
         for (Rule rule : rules) {
-            String content = rule.getContent();
-            StringBuilder selectors = mergedRules.get(content);
-            if (selectors == null) {
-                selectors = new StringBuilder(rule.getSelector());
-                mergedRules.put(content, selectors);
-            } else {
-                selectors.append(",").append(rule.getSelector());
+            List<List<Rule>> sameFingerprint = byFingerprint.get(rule.getFingerprint());
+            if (sameFingerprint == null) {
+                sameFingerprint = Lists.newArrayListWithCapacity(1);
+                byFingerprint.put(rule.getFingerprint(), sameFingerprint);
             }
-
+            List<Rule> sameContent = null;
+            for (List<Rule> candidate : sameFingerprint) {
+                if (candidate.get(0).hasSameContent(rule)) {
+                    sameContent = candidate;
+                    break;
+                }
+            }
+            if (sameContent == null) {
+                sameContent = Lists.newArrayList();
+                sameFingerprint.add(sameContent);
+                mergedRules.add(sameContent);
+            }
+            sameContent.add(rule);
         }
-        for (Map.Entry<String, StringBuilder> entry : mergedRules.entrySet()) {
-            String ruleset = entry.getKey();
-            RuleParseResult ruleParseResult = parseRule(ruleset);
-            result.add(new Rule(entry.getValue().toString(), ruleParseResult.getStyles(), ruleParseResult.getSubRules()));
+
+        for (List<Rule> sameContent : mergedRules) {
+            Rule first = sameContent.get(0);
+            if (sameContent.size() == 1) {
+                result.add(first);
+                continue;
+            }
+            StringBuilder selectors = new StringBuilder(first.getSelector());
+            for (Rule rule : sameContent.subList(1, sameContent.size())) {
+                selectors.append(",").append(rule.getSelector());
+            }
+            result.add(new Rule(selectors.toString(), first.getStyles(), first.getSubRules()));
         }
         return result;
     }
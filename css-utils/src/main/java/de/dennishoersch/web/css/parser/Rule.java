@@ -15,23 +15,29 @@
  */
 package de.dennishoersch.web.css.parser;
 
+import java.io.IOException;
 import java.util.List;
 
-import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
 
 /**
  * @author hoersch
  */
 public class Rule {
 
-    private static final Joiner _STYLE_JOINER = Joiner.on(";").skipNulls();
-    private static final Joiner _RULE_JOINER = Joiner.on("").skipNulls();
+    private static final HashFunction _FINGERPRINT = Hashing.murmur3_128();
 
     private final String _selector;
     private final List<Style> _styles;
     private final List<Rule> _subRules;
 
+    // Built lazily, the rule is immutable
+    private String _content;
+    private HashCode _fingerprint;
+
     public Rule(String selector, List<Style> styles, List<Rule> subRules) {
         _selector = selector;
         _styles = styles == null ? ImmutableList.<Style> of() : ImmutableList.<Style> copyOf(styles);
@@ -59,20 +65,118 @@ public class Rule {
         return _subRules;
     }
 
+    /**
+     * @return the number of characters written by {@link #writeTo(Appendable)}
+     */
+    public int length() {
+        return _selector.length() + 2 + contentLength();
+    }
+
+    /**
+     * Writes the rule as in the stylesheet.
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void writeTo(Appendable out) throws IOException {
+        out.append(_selector).append('{');
+        writeContentTo(out);
+        out.append('}');
+    }
+
     @Override
     public String toString() {
-        String content = getContent();
-        return _selector + "{" + content + "}";
+        StringBuilder result = new StringBuilder(length());
+        try {
+            writeTo(result);
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't happen, everything is in memory.", e);
+        }
+        return result.toString();
     }
 
+    /**
+     * The content is built only once.
+     *
+     * @return the styles and sub rules as in the stylesheet
+     */
     String getContent() {
-        String content = "";
-        if (!_styles.isEmpty()) {
-            content += _STYLE_JOINER.join(_styles) + ";";
-        }
-        if (!_subRules.isEmpty()) {
-            content += _RULE_JOINER.join(_subRules);
+        String content = _content;
+        if (content == null) {
+            StringBuilder result = new StringBuilder(contentLength());
+            try {
+                writeContentTo(result);
+            } catch (IOException e) {
+                throw new IllegalStateException("Can't happen, everything is in memory.", e);
+            }
+            content = result.toString();
+            _content = content;
         }
         return content;
     }
+
+    private int contentLength() {
+        int length = 0;
+        for (Style style : _styles) {
+            length += style.length() + 1;
+        }
+        for (Rule rule : _subRules) {
+            length += rule.length();
+        }
+        return length;
+    }
+
+    private void writeContentTo(Appendable out) throws IOException {
+        for (Style style : _styles) {
+            style.writeTo(out);
+            out.append(';');
+        }
+        for (Rule rule : _subRules) {
+            rule.writeTo(out);
+        }
+    }
+
+    /**
+     * The fingerprint is computed only once. Rules with different fingerprints have different content, rules with the same
+     * fingerprint most probably have the same content (see {@link #hasSameContent(Rule)}).
+     *
+     * @return a 128 bit hash of the content
+     */
+    HashCode getFingerprint() {
+        HashCode fingerprint = _fingerprint;
+        if (fingerprint == null) {
+            fingerprint = _FINGERPRINT.hashString(getContent());
+            _fingerprint = fingerprint;
+        }
+        return fingerprint;
+    }
+
+    /**
+     * The styles are compared by the ids of their names and values, see {@link Style#hasSameSymbols(Style)}.
+     *
+     * @param other
+     * @return whether the other rule has exactly the same content
+     */
+    boolean hasSameContent(Rule other) {
+        return getFingerprint().equals(other.getFingerprint()) && hasSameStylesAndSubRules(other);
+    }
+
+    private boolean hasSameStylesAndSubRules(Rule other) {
+        if (_styles.size() != other._styles.size() || _subRules.size() != other._subRules.size()) {
+            return false;
+        }
+        for (int i = 0; i < _styles.size(); i++) {
+            if (!_styles.get(i).hasSameSymbols(other._styles.get(i))) {
+                return false;
+            }
+        }
+        for (int i = 0; i < _subRules.size(); i++) {
+            Rule subRule = _subRules.get(i);
+            Rule otherSubRule = other._subRules.get(i);
+            if (!subRule._selector.equals(otherSubRule._selector) || !subRule.hasSameStylesAndSubRules(otherSubRule)) {
+                return false;
+            }
+        }
+        return true;
+    }
 }
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css.parser;
+
+import java.util.List;
+import java.util.Locale;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * Merges complete sets of longhands into their shorthand, for example <code>margin-top:0;margin-right:1px;
+ * margin-bottom:0;margin-left:1px</code> into <code>margin:0 1px</code>. Only shorthands of the four sides are merged,
+ * their values are just the values of the longhands.
+ * <p>
+ * The longhands are not merged if one of them has a value with a vendor prefix, a variable or a value like
+ * <code>inherit</code>, if they differ in <code>!important</code> or if a rule contains browser hacks for them, like
+ * <code>*margin-top</code>. The shorthand takes the place of the last longhand.
+ * </p>
+ *
+ * @author hoersch
+ */
+public final class Shorthands {
+    private static final List<String> _SHORTHANDS = ImmutableList.of("margin", "padding", "border-width", "border-style", "border-color");
+
+    private Shorthands() {
+    }
+
+    /**
+     * @param stylesheet
+     * @return the stylesheet with merged shorthands, normalized again
+     */
+    public static Stylesheet merge(Stylesheet stylesheet) {
+        return new Stylesheet(Parser.normalize(merge(stylesheet.getRules())));
+    }
+
+    private static List<Rule> merge(List<Rule> rules) {
+        List<Rule> result = Lists.newArrayListWithCapacity(rules.size());
+        for (Rule rule : rules) {
+            if (!rule.getSubRules().isEmpty()) {
+                result.add(new Rule(rule.getSelector(), null, merge(rule.getSubRules())));
+            } else {
+                List<Style> styles = rule.getStyles();
+                for (String shorthand : _SHORTHANDS) {
+                    styles = merge(shorthand, styles);
+                }
+                result.add(styles == rule.getStyles() ? rule : new Rule(rule.getSelector(), styles, null));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the styles with the longhands of the shorthand merged, the given styles if they can't be merged
+     */
+    private static List<Style> merge(String shorthand, List<Style> styles) {
+        List<String> longhands = CssProperties.longhands(shorthand);
+        if (styles.size() < longhands.size()) {
+            return styles;
+        }
+
+        int[] positions = { -1, -1, -1, -1 };
+        for (int i = 0; i < styles.size(); i++) {
+            String name = styles.get(i).getName().toLowerCase(Locale.ENGLISH);
+            int side = longhands.indexOf(name);
+            if (side >= 0) {
+                if (positions[side] >= 0) {
+                    return styles;
+                }
+                positions[side] = i;
+            } else if (name.equals(shorthand) || isHack(name, shorthand, longhands)) {
+                return styles;
+            }
+        }
+
+        String[] values = new String[4];
+        Boolean important = null;
+        int last = -1;
+        for (int side = 0; side < 4; side++) {
+            if (positions[side] < 0) {
+                return styles;
+            }
+            String value = styles.get(positions[side]).getValue();
+            boolean sideImportant = CssProperties.isImportant(value);
+            if (important != null && important.booleanValue() != sideImportant) {
+                return styles;
+            }
+            important = Boolean.valueOf(sideImportant);
+            values[side] = CssProperties.withoutImportant(value);
+            if (!isMergeable(values[side])) {
+                return styles;
+            }
+            last = Math.max(last, positions[side]);
+        }
+
+        String value = boxValue(values[0], values[1], values[2], values[3]) + (important.booleanValue() ? "!important" : "");
+        List<Style> result = Lists.newArrayListWithCapacity(styles.size() - 3);
+        for (int i = 0; i < styles.size(); i++) {
+            if (i == last) {
+                result.add(new Style(shorthand, value));
+            } else if (i != positions[0] && i != positions[1] && i != positions[2] && i != positions[3]) {
+                result.add(styles.get(i));
+            }
+        }
+        return result;
+    }
+
+    private static boolean isHack(String name, String shorthand, List<String> longhands) {
+        if (!name.startsWith("*") && !name.startsWith("_")) {
+            return false;
+        }
+        String property = name.substring(1);
+        return property.equals(shorthand) || longhands.contains(property);
+    }
+
+    private static boolean isMergeable(String value) {
+        return !value.isEmpty() && !CssProperties.isCssWideKeyword(value) && !CssProperties.hasVendorPrefixValue(value) && !value.contains("var(");
+    }
+
+    /**
+     * @return the shortest value for the four sides
+     */
+    private static String boxValue(String top, String right, String bottom, String left) {
+        if (!left.equals(right)) {
+            return top + " " + right + " " + bottom + " " + left;
+        }
+        if (!bottom.equals(top)) {
+            return top + " " + right + " " + bottom;
+        }
+        if (!right.equals(top)) {
+            return top + " " + right;
+        }
+        return top;
+    }
+}
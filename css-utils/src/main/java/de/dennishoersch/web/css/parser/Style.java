@@ -15,37 +15,107 @@
  */
 package de.dennishoersch.web.css.parser;
 
+import java.io.IOException;
+
 /**
+ * A style refers to its name and value by their ids in the {@link Symbols}. Names or values which are not interned are
+ * held as they are.
+ *
  * @author hoersch
  */
 public class Style {
-    private final String _name;
+    private final int _name;
 
-    private final String _value;
+    private final int _value;
+
+    // The name or the value, which is not interned. If both are not, both separated by ':'.
+    private final String _uninterned;
 
     public Style(String style) {
-        int i = style.indexOf(":");
-        if (i <= 0) {
-            throw new IllegalStateException("Style is incorrect: " + style);
-        }
-        _name = style.substring(0, i).trim();
-        String tmp = style.substring(i + 1).trim();
-        if (tmp.endsWith(";")) {
-            tmp = tmp.substring(0, tmp.length() - 1);
+        this(nameOf(style), valueOf(style));
+    }
+
+    Style(String name, String value) {
+        _name = Symbols.NAMES.id(name);
+        _value = Symbols.VALUES.id(value);
+        if (_name < 0 && _value < 0) {
+            _uninterned = name + ":" + value;
+        } else if (_name < 0) {
+            _uninterned = name;
+        } else if (_value < 0) {
+            _uninterned = value;
+        } else {
+            _uninterned = null;
         }
-        _value = tmp;
     }
 
     public String getName() {
-        return _name;
+        if (_name >= 0) {
+            return Symbols.NAMES.symbol(_name);
+        }
+        return _value >= 0 ? _uninterned : _uninterned.substring(0, _uninterned.indexOf(':'));
     }
 
     public String getValue() {
-        return _value;
+        if (_value >= 0) {
+            return Symbols.VALUES.symbol(_value);
+        }
+        return _name >= 0 ? _uninterned : _uninterned.substring(_uninterned.indexOf(':') + 1);
+    }
+
+    /**
+     * @param other
+     * @return whether the other style has the same name and value, compared by their ids if they are interned
+     */
+    boolean hasSameSymbols(Style other) {
+        return _name == other._name && _value == other._value && (_uninterned == null || _uninterned.equals(other._uninterned));
+    }
+
+    /**
+     * @return the number of characters written by {@link #writeTo(Appendable)}
+     */
+    public int length() {
+        if (_name < 0 && _value < 0) {
+            return _uninterned.length();
+        }
+        return getName().length() + 1 + getValue().length();
+    }
+
+    /**
+     * Writes the style as in the stylesheet.
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void writeTo(Appendable out) throws IOException {
+        if (_name < 0 && _value < 0) {
+            out.append(_uninterned);
+            return;
+        }
+        out.append(getName()).append(':').append(getValue());
     }
 
     @Override
     public String toString() {
-        return _name + ":" + _value;
+        if (_name < 0 && _value < 0) {
+            return _uninterned;
+        }
+        return getName() + ":" + getValue();
+    }
+
+    private static String nameOf(String style) {
+        int i = style.indexOf(":");
+        if (i <= 0) {
+            throw new IllegalStateException("Style is incorrect: " + style);
+        }
+        return style.substring(0, i).trim();
+    }
+
+    private static String valueOf(String style) {
+        String value = style.substring(style.indexOf(":") + 1).trim();
+        if (value.endsWith(";")) {
+            value = value.substring(0, value.length() - 1);
+        }
+        return value;
     }
 }
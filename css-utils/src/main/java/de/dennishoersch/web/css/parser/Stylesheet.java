@@ -15,10 +15,18 @@
  */
 package de.dennishoersch.web.css.parser;
 
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
 import java.util.List;
 
 import com.google.common.collect.ImmutableList;
 
+import de.dennishoersch.web.css.metrics.Metrics;
+import de.dennishoersch.web.css.metrics.Phase;
+
 /**
  * @author hoersch
  */
@@ -37,15 +45,61 @@ public class Stylesheet {
         return _rules;
     }
 
+    /**
+     * @return the number of characters written by {@link #writeTo(Appendable)}
+     */
+    public int length() {
+        int length = 0;
+        for (Rule rule : _rules) {
+            length += rule.length();
+        }
+        return length;
+    }
+
+    /**
+     * Writes the stylesheet rule by rule, without building it as a whole.
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void writeTo(Appendable out) throws IOException {
+        if (!Metrics.isEnabled()) {
+            writeRulesTo(out);
+            return;
+        }
+        long start = System.nanoTime();
+        writeRulesTo(out);
+        Metrics.phase(Phase.SERIALIZE, System.nanoTime() - start, -1, length());
+    }
+
+    /**
+     * Writes the stylesheet encoded with the given charset to the channel. The channel is not closed.
+     *
+     * @param channel
+     * @param charset
+     * @throws IOException
+     */
+    public void writeTo(WritableByteChannel channel, Charset charset) throws IOException {
+        Writer out = Channels.newWriter(channel, charset.newEncoder(), -1);
+        writeTo(out);
+        out.flush();
+    }
+
     @Override
     public String toString() {
-        StringBuilder result = new StringBuilder();
-        for (Rule rule : _rules) {
-            result.append(rule.toString())
-//            .append("\n")
-            ;
+        StringBuilder result = new StringBuilder(length());
+        try {
+            writeTo(result);
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't happen, everything is in memory.", e);
         }
         return result.toString();
     }
 
+    private void writeRulesTo(Appendable out) throws IOException {
+        for (Rule rule : _rules) {
+            rule.writeTo(out);
+        }
+    }
+
 }
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css.parser;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * Builds the normalized {@link Stylesheet} from the parts reported by the {@link Parser}. For the normalization see
+ * {@link Parser}.
+ *
+ * @author hoersch
+ */
+public class StylesheetBuilder implements CssHandler {
+
+    private final List<Rule> _rules = Lists.newArrayList();
+    private final Deque<OpenRule> _openRules = new ArrayDeque<>();
+
+    @Override
+    public void startRule() {
+        _openRules.push(new OpenRule());
+    }
+
+    @Override
+    public void selector(String selector) {
+        _openRules.peek()._selectors.add(selector);
+    }
+
+    @Override
+    public void startBlock() {
+        _openRules.peek()._subRules = Lists.newArrayList();
+    }
+
+    @Override
+    public void declaration(String name, String value) {
+        _openRules.peek()._styles.add(new Style(name, value));
+    }
+
+    @Override
+    public void endRule() {
+        OpenRule rule = _openRules.pop();
+        List<Style> styles = null;
+        List<Rule> subRules = null;
+        // Immutable already, so that the rules of all selectors share them
+        if (rule._subRules != null) {
+            subRules = ImmutableList.copyOf(Parser.normalize(rule._subRules));
+        } else {
+            styles = ImmutableList.copyOf(Parser.reduceStyles(rule._styles));
+        }
+
+        List<Rule> rules = _openRules.isEmpty() ? _rules : _openRules.peek()._subRules;
+        for (String selector : rule._selectors) {
+            rules.add(new Rule(selector, styles, subRules));
+        }
+    }
+
+    /**
+     * @return the normalized stylesheet of all rules reported so far
+     */
+    public Stylesheet getStylesheet() {
+        return Parser.stylesheet(_rules);
+    }
+
+    /**
+     * @return the top level rules reported so far, not yet normalized
+     */
+    List<Rule> getRules() {
+        return _rules;
+    }
+
+    private static class OpenRule {
+        private final List<String> _selectors = Lists.newArrayListWithCapacity(1);
+        private final List<Style> _styles = Lists.newArrayList();
+        private List<Rule> _subRules;
+    }
+}
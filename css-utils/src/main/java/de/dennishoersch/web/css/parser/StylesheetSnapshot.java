@@ -0,0 +1,172 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css.parser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Compact binary form of a {@link Stylesheet}.
+ * <p>
+ * All selectors, names and values are written once into a table of UTF-8 strings, the rules refer to them by index. All
+ * numbers are written as variable length integers, 7 bits per byte.
+ * </p>
+ *
+ * @author hoersch
+ */
+public final class StylesheetSnapshot {
+    private static final int _MAGIC = 0x43535353;
+    private static final int _FORMAT_VERSION = 1;
+
+    private StylesheetSnapshot() {
+    }
+
+    /**
+     * Writes the snapshot of the stylesheet.
+     *
+     * @param stylesheet
+     * @param out
+     * @throws IOException
+     */
+    public static void write(Stylesheet stylesheet, OutputStream out) throws IOException {
+        Map<String, Integer> strings = Maps.newLinkedHashMap();
+        collectStrings(stylesheet.getRules(), strings);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(stylesheet.length() / 2);
+        writeInt(bytes, _MAGIC);
+        writeVarInt(bytes, _FORMAT_VERSION);
+        writeVarInt(bytes, strings.size());
+        for (String string : strings.keySet()) {
+            byte[] utf8 = string.getBytes(Charsets.UTF_8);
+            writeVarInt(bytes, utf8.length);
+            bytes.write(utf8);
+        }
+        writeRules(bytes, stylesheet.getRules(), strings);
+        bytes.writeTo(out);
+    }
+
+    /**
+     * Reads a snapshot written by {@link #write(Stylesheet, OutputStream)}.
+     *
+     * @param snapshot
+     *            read from its position on
+     * @return the stylesheet
+     * @throws IOException
+     *             if the snapshot is not valid or has been written in another version
+     */
+    public static Stylesheet read(ByteBuffer snapshot) throws IOException {
+        try {
+            if (snapshot.getInt() != _MAGIC) {
+                throw new IOException("Not a stylesheet snapshot!");
+            }
+            int version = readVarInt(snapshot);
+            if (version != _FORMAT_VERSION) {
+                throw new IOException("Snapshot version " + version + " is not supported!");
+            }
+            String[] strings = new String[readVarInt(snapshot)];
+            for (int i = 0; i < strings.length; i++) {
+                byte[] utf8 = new byte[readVarInt(snapshot)];
+                snapshot.get(utf8);
+                strings[i] = new String(utf8, Charsets.UTF_8);
+            }
+            return new Stylesheet(readRules(snapshot, strings));
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+            throw new IOException("Snapshot is truncated or corrupt!", e);
+        }
+    }
+
+    private static void collectStrings(List<Rule> rules, Map<String, Integer> strings) {
+        for (Rule rule : rules) {
+            collectString(rule.getSelector(), strings);
+            for (Style style : rule.getStyles()) {
+                collectString(style.getName(), strings);
+                collectString(style.getValue(), strings);
+            }
+            collectStrings(rule.getSubRules(), strings);
+        }
+    }
+
+    private static void collectString(String string, Map<String, Integer> strings) {
+        if (!strings.containsKey(string)) {
+            strings.put(string, Integer.valueOf(strings.size()));
+        }
+    }
+
+    private static void writeRules(OutputStream out, List<Rule> rules, Map<String, Integer> strings) throws IOException {
+        writeVarInt(out, rules.size());
+        for (Rule rule : rules) {
+            writeVarInt(out, strings.get(rule.getSelector()).intValue());
+            writeVarInt(out, rule.getStyles().size());
+            for (Style style : rule.getStyles()) {
+                writeVarInt(out, strings.get(style.getName()).intValue());
+                writeVarInt(out, strings.get(style.getValue()).intValue());
+            }
+            writeRules(out, rule.getSubRules(), strings);
+        }
+    }
+
+    private static List<Rule> readRules(ByteBuffer in, String[] strings) {
+        int count = readVarInt(in);
+        List<Rule> rules = Lists.newArrayListWithCapacity(count);
+        for (int i = 0; i < count; i++) {
+            String selector = strings[readVarInt(in)];
+            int styleCount = readVarInt(in);
+            List<Style> styles = Lists.newArrayListWithCapacity(styleCount);
+            for (int j = 0; j < styleCount; j++) {
+                styles.add(new Style(strings[readVarInt(in)], strings[readVarInt(in)]));
+            }
+            rules.add(new Rule(selector, styles, readRules(in, strings)));
+        }
+        return rules;
+    }
+
+    private static void writeInt(OutputStream out, int value) throws IOException {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    private static void writeVarInt(OutputStream out, int value) throws IOException {
+        int rest = value;
+        while ((rest & ~0x7F) != 0) {
+            out.write((rest & 0x7F) | 0x80);
+            rest >>>= 7;
+        }
+        out.write(rest);
+    }
+
+    private static int readVarInt(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IndexOutOfBoundsException("Variable length integer is too long");
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css.parser;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A table of interned strings, shared by all parsed stylesheets. Each string is held once and has an id, so that
+ * {@link Style}s refer to their names and values by id and compare them by id.
+ * <p>
+ * Strings are looked up without a lock and directly from the characters of the stylesheet, so a string seen before is
+ * not copied at all. Only strings up to a maximum length are interned and, once the table holds its maximum number of
+ * strings, no new ones are added. Long or rare strings like data URIs would only fill the table in a long running
+ * server. A full table is not locked any more.
+ * </p>
+ *
+ * @author hoersch
+ */
+final class Symbols {
+    /** The names of styles. */
+    static final Symbols NAMES = new Symbols(1 << 16, 64);
+    /** The values of styles. */
+    static final Symbols VALUES = new Symbols(1 << 18, 128);
+
+    private final int _maxSize;
+    private final int _maxLength;
+
+    // Entries and strings are only published by volatile writes, an entry after its string
+    private volatile AtomicReferenceArray<Entry> _table = new AtomicReferenceArray<>(1024);
+    private volatile AtomicReferenceArray<String> _symbols = new AtomicReferenceArray<>(1024);
+    private volatile boolean _full;
+    private int _size;
+
+    Symbols(int maxSize, int maxLength) {
+        _maxSize = maxSize;
+        _maxLength = maxLength;
+    }
+
+    /**
+     * @return the id of the string, <code>-1</code> if it is not interned
+     */
+    int id(String string) {
+        if (string.length() > _maxLength) {
+            return -1;
+        }
+        int hash = string.hashCode();
+        Entry entry = find(hash, string);
+        if (entry != null) {
+            return entry._id;
+        }
+        return _full ? -1 : add(hash, string)._id;
+    }
+
+    /**
+     * @return the interned string of the characters, a new one if it is not interned
+     */
+    String intern(char[] chars, int start, int end) {
+        if (end - start > _maxLength) {
+            return new String(chars, start, end - start);
+        }
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        AtomicReferenceArray<Entry> table = _table;
+        for (Entry entry = table.get(hash & (table.length() - 1)); entry != null; entry = entry._next) {
+            if (entry._hash == hash && entry.matches(chars, start, end)) {
+                return entry._symbol;
+            }
+        }
+        String string = new String(chars, start, end - start);
+        return _full ? string : add(hash, string)._symbol;
+    }
+
+    /**
+     * @param id
+     *            of an interned string
+     * @return the string
+     */
+    String symbol(int id) {
+        return _symbols.get(id);
+    }
+
+    private Entry find(int hash, String string) {
+        AtomicReferenceArray<Entry> table = _table;
+        for (Entry entry = table.get(hash & (table.length() - 1)); entry != null; entry = entry._next) {
+            if (entry._hash == hash && entry._symbol.equals(string)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds the string unless another thread did already. If the table is full an entry with id <code>-1</code> is
+     * returned.
+     */
+    private synchronized Entry add(int hash, String string) {
+        Entry entry = find(hash, string);
+        if (entry != null) {
+            return entry;
+        }
+        if (_size == _maxSize) {
+            return new Entry(string, hash, -1, null);
+        }
+
+        AtomicReferenceArray<String> symbols = _symbols;
+        if (_size == symbols.length()) {
+            symbols = copy(symbols, 2 * symbols.length());
+        }
+        symbols.set(_size, string);
+        _symbols = symbols;
+
+        AtomicReferenceArray<Entry> table = _table;
+        if (_size > table.length() * 3 / 4) {
+            table = rehash(table);
+        }
+        int index = hash & (table.length() - 1);
+        entry = new Entry(string, hash, _size++, table.get(index));
+        table.set(index, entry);
+        _table = table;
+        _full = _size == _maxSize;
+        return entry;
+    }
+
+    private static AtomicReferenceArray<String> copy(AtomicReferenceArray<String> symbols, int length) {
+        AtomicReferenceArray<String> result = new AtomicReferenceArray<>(length);
+        for (int i = 0; i < symbols.length(); i++) {
+            result.set(i, symbols.get(i));
+        }
+        return result;
+    }
+
+    private static AtomicReferenceArray<Entry> rehash(AtomicReferenceArray<Entry> table) {
+        AtomicReferenceArray<Entry> result = new AtomicReferenceArray<>(2 * table.length());
+        for (int i = 0; i < table.length(); i++) {
+            for (Entry entry = table.get(i); entry != null; entry = entry._next) {
+                int index = entry._hash & (result.length() - 1);
+                result.set(index, new Entry(entry._symbol, entry._hash, entry._id, result.get(index)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Immutable, so that the buckets can be read without a lock.
+     */
+    private static final class Entry {
+        private final String _symbol;
+        private final int _hash;
+        private final int _id;
+        private final Entry _next;
+
+        Entry(String symbol, int hash, int id, Entry next) {
+            _symbol = symbol;
+            _hash = hash;
+            _id = id;
+            _next = next;
+        }
+
+        boolean matches(char[] chars, int start, int end) {
+            if (_symbol.length() != end - start) {
+                return false;
+            }
+            for (int i = start; i < end; i++) {
+                if (_symbol.charAt(i - start) != chars[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -15,96 +15,374 @@
  */
 package de.dennishoersch.web.css.parser;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
 
-import org.apache.commons.lang3.StringUtils;
+import com.google.common.io.CharStreams;
 
 /**
  * @author hoersch
  */
 public class Util {
-    static String stripUnnecessary(String css) {
-        String s = css;
 
+    /**
+     * Strips comments, unnecessary whitespace, empty rules and multiple semicolons from the given stylesheet.
+     * <p>Everything is done in one pass over the characters of the stylesheet. The contents of <code>url(...)</code> are kept as they are.</p>
+     *
+     * @param css
+     * @return the stripped stylesheet
+     */
+    static String stripUnnecessary(String css) {
         // Problem: Some urls might contain '//':
         // url(http://www.somedomain.de/image.png)
         // url('http://www.somedomain.de/image.png')
         // url("http://www.somedomain.de/image.png")
+        try (Reader stripped = new Stripper(new CharWindow(css.toCharArray()), false)) {
+            return CharStreams.toString(stripped);
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't happen, everything is in memory.", e);
+        }
+    }
 
-        URLsHolderAndText urlsHolderAndText = URLsHolderAndText.of(s);
+    /**
+     * Strips the given stylesheet like {@link #stripUnnecessary(String)} while it is read.
+     * <p>Only the characters needed to decide what to strip are buffered. This is usually not more than the longest
+     * comment or <code>url(...)</code> and the longest style.</p>
+     *
+     * @param css
+     * @param forbidImport whether to fail on any <code>@import</code> tag
+     * @return the stripped stylesheet
+     */
+    static Reader stripping(CharWindow css, boolean forbidImport) {
+        return new Stripper(css, forbidImport);
+    }
 
-        s = urlsHolderAndText.textWithoutURLs();
+    /**
+     * Single pass over the characters of a stylesheet. The input goes through the following stages, each one handing its
+     * output directly to the next:
+     * <ol>
+     * <li>Keep <code>url(...)</code> untouched, even inside comments</li>
+     * <li>Strip the multi line comments</li>
+     * <li>Strip the single line comments (might be built by stripping a many line comment)</li>
+     * <li>Strip the line breaks</li>
+     * <li>Collapse whitespaces and strip them around <code>{</code>, <code>}</code>, <code>;</code> and <code>:</code></li>
+     * <li>Remove empty rules (taken from YUICompressor) and multiple semicolons</li>
+     * </ol>
+     * Everything in the output before a possibly empty rule can be read.
+     */
+    private static final class Stripper extends Reader {
+        private static final String _IMPORT = "@import";
+        private static final int _STEPS = 1024;
 
-        // Strip comments
-        // First remove the many liners then the single line ones
-        s = s.replaceAll("(?s)/\\*.*?\\*/", "");
-        s = s.replaceAll("(?)//.*", "");
+        private final CharWindow _in;
+        private int _position;
+        private boolean _ended;
 
-        // Strip whitespaces
-        s = s.replace("\r\n", "").replace("\n", "");
-        s = s.replace("\t", " ");
-        s = s.replaceAll("\\s+", " ");
+        private char[] _out = new char[8192];
+        private int _length;
+        // Position in the output up to which has been read
+        private int _read;
+        private boolean _started;
 
-        s = s.replace(" {", "{");
-        s = s.replace("{ ", "{");
+        private final boolean _forbidImport;
+        private int _importMatched;
 
-        s = s.replace("} ", "}");
-        s = s.replace(" }", "}");
+        // positions from where on no more closing parenthesis or end of comment can be found
+        private int _noUrlEndFrom = Integer.MAX_VALUE;
+        private int _noCommentEndFrom = Integer.MAX_VALUE;
 
-        s = s.replace("; ", ";");
-        s = s.replace(" ;", ";");
-        s = s.replace(": ", ":");
-        s = s.replace(" :", ":");
+        // single line comments
+        private boolean _slash;
+        private boolean _lineComment;
 
-        // Remove empty rules. (Taken from YUICompressor)
-        s = s.replaceAll("[^\\}\\{/;]+\\{\\}", "");
+        // line breaks
+        private boolean _carriageReturn;
 
-        // Strip multiple semicolons
-        s = s.replaceAll(";;+", ";");
+        // whitespaces
+        private boolean _space;
+        private boolean _afterSpecial;
 
-        return urlsHolderAndText.reInsertURLs(s.trim());
-    }
+        // empty rules
+        private int _ruleStart;
+        private int _openRuleStart = -1;
+
+        Stripper(CharWindow css, boolean forbidImport) {
+            _in = css;
+            _forbidImport = forbidImport;
+        }
 
-    private static class URLsHolderAndText {
-        private static final Pattern _URL = Pattern.compile("url\\(([^\\)]*)\\)");
-        private final String _text;
-        private final Map<String, String> _replacements;
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            int readable;
+            while ((readable = readable()) == 0) {
+                if (_ended) {
+                    return -1;
+                }
+                for (int i = 0; i < _STEPS && !_ended; i++) {
+                    step();
+                }
+            }
+            int n = Math.min(readable, len);
+            if (_forbidImport) {
+                checkImport(_read, _read + n);
+            }
+            System.arraycopy(_out, _read, cbuf, off, n);
+            _read += n;
+            return n;
+        }
 
-        private URLsHolderAndText(String text, Map<String, String> replacements) {
-            _text = text;
-            _replacements = replacements;
+        @Override
+        public void close() throws IOException {
+            _in.close();
         }
 
-        public static URLsHolderAndText of(String text) {
-            Map<String, String> marker = new HashMap<>();
+        private void step() throws IOException {
+            int i = _position;
+            _in.release(i);
+            if (!_in.has(i)) {
+                end();
+                return;
+            }
+            int urlEnd = urlEnd(i);
+            if (urlEnd > 0) {
+                url(i, urlEnd);
+                _position = urlEnd;
+                return;
+            }
+            char c = _in.charAt(i);
+            if (c == '/' && _in.has(i + 1) && _in.charAt(i + 1) == '*') {
+                int commentEnd = commentEnd(i + 2);
+                if (commentEnd > 0) {
+                    _position = commentEnd;
+                    return;
+                }
+            }
+            stripLineComments(c);
+            _position = i + 1;
+        }
 
-            String result = text;
-            Matcher matcher = _URL.matcher(text);
+        private void end() {
+            if (_slash) {
+                _slash = false;
+                stripLineBreaks('/');
+            }
+            if (_carriageReturn) {
+                _carriageReturn = false;
+                collapseWhitespaces('\r');
+            }
+            _ended = true;
+        }
 
-            for (int i = 0; matcher.find(); i++) {
-                String replacement = "__X__URL_" + i + "_URL_X__";
-                String original = matcher.group();
-                result = StringUtils.replaceOnce(result, original, replacement);
-                marker.put(replacement, original);
+        /**
+         * The output is trimmed, which is why whitespaces at the end are kept back until something else follows.
+         *
+         * @return the number of characters which can be read
+         */
+        private int readable() {
+            int end = _ended ? _length : (_openRuleStart >= 0 ? _openRuleStart : _ruleStart);
+            while (end > _read && _out[end - 1] <= ' ') {
+                end--;
+            }
+            if (!_started) {
+                while (_read < end && _out[_read] <= ' ') {
+                    _read++;
+                }
+                _started = _read < end;
             }
+            return end - _read;
+        }
 
-            return new URLsHolderAndText(result, marker);
+        private void checkImport(int start, int end) {
+            for (int i = start; i < end; i++) {
+                char c = _out[i];
+                if (c == _IMPORT.charAt(_importMatched)) {
+                    _importMatched++;
+                    if (_importMatched == _IMPORT.length()) {
+                        String source = _in.source();
+                        throw new IllegalArgumentException("Stylesheet must not contain any @import tag" + (source == null ? "" : ", but is '" + source + "'") + "!");
+                    }
+                } else {
+                    _importMatched = c == _IMPORT.charAt(0) ? 1 : 0;
+                }
+            }
         }
 
-        public String textWithoutURLs() {
-            return _text;
+        private int urlEnd(int i) throws IOException {
+            if (i + 4 >= _noUrlEndFrom || !_in.has(i + 3) || _in.charAt(i) != 'u' || _in.charAt(i + 1) != 'r' || _in.charAt(i + 2) != 'l' || _in.charAt(i + 3) != '(') {
+                return -1;
+            }
+            for (int k = i + 4; _in.has(k); k++) {
+                if (_in.charAt(k) == ')') {
+                    return k + 1;
+                }
+            }
+            _noUrlEndFrom = i + 4;
+            return -1;
         }
 
-        public String reInsertURLs(String text) {
-            String result = text;
-            for (Map.Entry<String, String> entry : _replacements.entrySet()) {
-                result = StringUtils.replaceOnce(result, entry.getKey(), entry.getValue());
+        private int commentEnd(int i) throws IOException {
+            if (i >= _noCommentEndFrom) {
+                return -1;
+            }
+            int k = i;
+            while (_in.has(k)) {
+                int urlEnd = urlEnd(k);
+                if (urlEnd > 0) {
+                    k = urlEnd;
+                } else if (_in.charAt(k) == '*' && _in.has(k + 1) && _in.charAt(k + 1) == '/') {
+                    return k + 2;
+                } else {
+                    k++;
+                }
             }
-            return result;
+            _noCommentEndFrom = i;
+            return -1;
         }
 
+        /**
+         * Makes room for more output. Everything read is dropped, except for the last character.
+         */
+        private void ensureOut(int n) {
+            if (_length + n <= _out.length) {
+                return;
+            }
+            int dropped = _read - 1;
+            if (dropped > 0) {
+                System.arraycopy(_out, dropped, _out, 0, _length - dropped);
+                _length -= dropped;
+                _read -= dropped;
+                _ruleStart -= dropped;
+                if (_openRuleStart >= 0) {
+                    _openRuleStart -= dropped;
+                }
+            }
+            if (_length + n > _out.length / 2) {
+                _out = Arrays.copyOf(_out, Math.max(2 * _out.length, _length + n));
+            }
+        }
+
+        private void url(int start, int end) {
+            if (_lineComment) {
+                return;
+            }
+            if (_slash) {
+                _slash = false;
+                stripLineBreaks('/');
+            }
+            if (_carriageReturn) {
+                _carriageReturn = false;
+                collapseWhitespaces('\r');
+            }
+            if (_space) {
+                _space = false;
+                stripEmptyRules(' ');
+            }
+            _afterSpecial = false;
+            _openRuleStart = -1;
+            ensureOut(end - start);
+            _in.copyTo(start, end, _out, _length);
+            _length += end - start;
+        }
+
+        private void stripLineComments(char c) {
+            if (_lineComment) {
+                if (!isLineTerminator(c)) {
+                    return;
+                }
+                _lineComment = false;
+            } else if (_slash) {
+                _slash = false;
+                if (c == '/') {
+                    _lineComment = true;
+                    return;
+                }
+                stripLineBreaks('/');
+            } else if (c == '/') {
+                _slash = true;
+                return;
+            }
+            stripLineBreaks(c);
+        }
+
+        private void stripLineBreaks(char c) {
+            if (_carriageReturn) {
+                _carriageReturn = false;
+                if (c == '\n') {
+                    return;
+                }
+                collapseWhitespaces('\r');
+            }
+            if (c == '\r') {
+                _carriageReturn = true;
+            } else if (c != '\n') {
+                collapseWhitespaces(c);
+            }
+        }
+
+        private void collapseWhitespaces(char c) {
+            if (isWhitespace(c)) {
+                _space = !_afterSpecial;
+                return;
+            }
+            boolean special = isSpecial(c);
+            if (_space) {
+                _space = false;
+                if (!special) {
+                    stripEmptyRules(' ');
+                }
+            }
+            _afterSpecial = special;
+            stripEmptyRules(c);
+        }
+
+        private void stripEmptyRules(char c) {
+            int openRuleStart = _openRuleStart;
+            _openRuleStart = -1;
+            switch (c) {
+                case '}':
+                    if (openRuleStart >= 0) {
+                        _length = openRuleStart;
+                        _ruleStart = _length;
+                        return;
+                    }
+                    break;
+                case '{':
+                    if (_length > _ruleStart) {
+                        _openRuleStart = _ruleStart;
+                    }
+                    break;
+                case ';':
+                    if (_length > 0 && _out[_length - 1] == ';') {
+                        _ruleStart = _length;
+                        return;
+                    }
+                    break;
+                case '/':
+                    break;
+                default:
+                    ensureOut(1);
+                    _out[_length++] = c;
+                    return;
+            }
+            ensureOut(1);
+            _out[_length++] = c;
+            _ruleStart = _length;
+        }
+
+        private static boolean isLineTerminator(char c) {
+            return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+        }
+
+        private static boolean isWhitespace(char c) {
+            return c == ' ' || c == '\t' || c == '\u000B' || c == '\f' || c == '\r';
+        }
+
+        private static boolean isSpecial(char c) {
+            return c == '{' || c == '}' || c == ';' || c == ':';
+        }
     }
 }
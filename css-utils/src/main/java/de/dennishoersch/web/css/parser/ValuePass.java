@@ -0,0 +1,33 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css.parser;
+
+/**
+ * Minifies the values of styles, see {@link Minifier}. {@link ValuePasses} are the passes built in.
+ *
+ * @author hoersch
+ */
+public interface ValuePass {
+
+    /**
+     * @param name
+     *            of the style
+     * @param value
+     *            of the style, may end with <code>!important</code>
+     * @return the minified value with the same meaning, the given instance if nothing is changed
+     */
+    String minify(String name, String value);
+}
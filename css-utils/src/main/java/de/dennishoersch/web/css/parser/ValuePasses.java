@@ -0,0 +1,425 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css.parser;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+
+/**
+ * The value passes built in. None of them changes custom properties (<code>--name</code>) or old IE filters and
+ * expressions.
+ *
+ * @author hoersch
+ */
+public enum ValuePasses implements ValuePass {
+
+    /**
+     * Shortens colors: <code>#ffffff</code> to <code>#fff</code>, <code>rgb(255,0,0)</code> to <code>#f00</code> and,
+     * in color properties, colors to their name or the other way round if shorter, like <code>#f00</code> to
+     * <code>red</code> and <code>white</code> to <code>#fff</code>.
+     */
+    COLORS {
+        @Override
+        String minifyValue(String name, String value) {
+            String result = value;
+            if (result.indexOf('(') >= 0 && result.indexOf('"') < 0 && result.indexOf('\'') < 0) {
+                result = rgbToHex(result);
+            }
+            return ValueTokens.rewrite(result, isColorProperty(name) ? _NAMED_COLORS : _HEX_COLORS);
+        }
+    },
+
+    /**
+     * Removes leading and trailing zeros of numbers: <code>0.50</code> to <code>.5</code>, <code>1.0em</code> to
+     * <code>1em</code>.
+     */
+    NUMBERS {
+        @Override
+        String minifyValue(String name, String value) {
+            if (name.equalsIgnoreCase("font-family")) {
+                return value;
+            }
+            return ValueTokens.rewrite(value, _NUMBERS);
+        }
+    },
+
+    /**
+     * Removes the units of zero lengths: <code>0px</code> to <code>0</code>. Not in calculations and not for flex
+     * bases, also vendor prefixed, where some browsers need the unit. Times, angles and percentages keep their unit.
+     */
+    ZERO_UNITS {
+        @Override
+        String minifyValue(String name, String value) {
+            String unprefixed = CssProperties.unprefixed(name);
+            if (_FLEX_BASES.contains(unprefixed) || _CALCULATION.matcher(value).find()) {
+                return value;
+            }
+            return ValueTokens.rewrite(value, _ZERO_LENGTHS);
+        }
+    },
+
+    /**
+     * Removes the quotes of URLs and of font family names, where they are not needed: <code>url("a.png")</code> to
+     * <code>url(a.png)</code>, <code>"Open Sans"</code> to <code>Open Sans</code>.
+     */
+    QUOTES {
+        @Override
+        String minifyValue(String name, String value) {
+            String result = unquoteUrls(value);
+            if (name.equalsIgnoreCase("font-family")) {
+                result = unquoteFamilies(result);
+            }
+            return result;
+        }
+    },
+
+    /**
+     * Replaces the font weights <code>normal</code> and <code>bold</code> by <code>400</code> and <code>700</code>.
+     */
+    FONT_WEIGHT {
+        @Override
+        String minifyValue(String name, String value) {
+            if (!name.equalsIgnoreCase("font-weight")) {
+                return value;
+            }
+            return ValueTokens.rewrite(value, _FONT_WEIGHTS);
+        }
+    };
+
+    private static final Pattern _NUMBER = Pattern.compile("([+-]?)(\\d*)(?:\\.(\\d+))?([a-zA-Z]*|%)");
+    private static final Pattern _HEX_COLOR = Pattern.compile("#([0-9a-fA-F]{3,4}|[0-9a-fA-F]{6}|[0-9a-fA-F]{8})");
+    private static final Pattern _RGB = Pattern.compile("\\brgba?\\(\\s*(\\d{1,3})\\s*[,\\s]\\s*(\\d{1,3})\\s*[,\\s]\\s*(\\d{1,3})\\s*(?:[,/]\\s*(?:1|1\\.0+|100%)\\s*)?\\)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern _CALCULATION = Pattern.compile("(calc|min|max|clamp|var|env)\\(", Pattern.CASE_INSENSITIVE);
+    private static final Pattern _IDENTIFIERS = Pattern.compile("-?[a-zA-Z_][a-zA-Z0-9_-]*( -?[a-zA-Z_][a-zA-Z0-9_-]*)*");
+
+    // -ms-flex-preferred-size is the flex-basis of IE 10
+    private static final Set<String> _FLEX_BASES = ImmutableSet.of("flex", "flex-basis", "flex-preferred-size");
+    private static final Set<String> _LENGTH_UNITS = ImmutableSet.of("px", "em", "rem", "ex", "ch", "vw", "vh", "vmin", "vmax", "cm", "mm", "q", "in", "pt", "pc");
+    private static final Set<String> _COLOR_PROPERTIES = ImmutableSet.of("background", "border", "border-top", "border-right", "border-bottom", "border-left", "outline",
+            "box-shadow", "text-shadow", "column-rule", "text-decoration", "fill", "stroke");
+    private static final Set<String> _KEYWORDS = ImmutableSet.of("inherit", "initial", "unset", "revert", "default", "serif", "sans-serif", "cursive", "fantasy",
+            "monospace", "system-ui", "emoji", "math", "fangsong", "ui-serif", "ui-sans-serif", "ui-monospace", "ui-rounded");
+
+    //@formatter:off
+    private static final Map<String, String> _SHORTER_NAMES = new ImmutableMap.Builder<String, String>()
+                    .put("#f00", "red")
+                    .put("#c0c0c0", "silver")
+                    .put("#808080", "gray")
+                    .put("#800000", "maroon")
+                    .put("#800080", "purple")
+                    .put("#008000", "green")
+                    .put("#808000", "olive")
+                    .put("#000080", "navy")
+                    .put("#008080", "teal")
+                    .put("#ffa500", "orange")
+                    .put("#ffc0cb", "pink")
+                    .put("#a52a2a", "brown")
+                    .put("#ffd700", "gold")
+                    .put("#4b0082", "indigo")
+                    .put("#ee82ee", "violet")
+                    .put("#f5deb3", "wheat")
+                    .put("#d2b48c", "tan")
+                    .put("#fffafa", "snow")
+                    .put("#ff7f50", "coral")
+                    .put("#fa8072", "salmon")
+                    .put("#f0e68c", "khaki")
+                    .put("#f5f5dc", "beige")
+                    .put("#ffe4c4", "bisque")
+                    .put("#dda0dd", "plum")
+                    .put("#da70d6", "orchid")
+                    .put("#cd853f", "peru")
+                    .put("#fffff0", "ivory")
+                    .put("#faf0e6", "linen")
+                    .put("#a0522d", "sienna")
+                    .put("#ff6347", "tomato")
+                    .put("#f0ffff", "azure")
+                    .build();
+    private static final Map<String, String> _SHORTER_HEX = new ImmutableMap.Builder<String, String>()
+                    .put("black", "#000")
+                    .put("white", "#fff")
+                    .put("yellow", "#ff0")
+                    .put("fuchsia", "#f0f")
+                    .put("magenta", "#f0f")
+                    .put("darkblue", "#00008b")
+                    .put("lightgoldenrodyellow", "#fafad2")
+                    .put("mediumvioletred", "#c71585")
+                    .put("blanchedalmond", "#ffebcd")
+                    .put("antiquewhite", "#faebd7")
+                    .put("lightslategray", "#789")
+                    .put("lightslategrey", "#789")
+                    .put("mediumslateblue", "#7b68ee")
+                    .put("cornflowerblue", "#6495ed")
+                    .build();
+    //@formatter:on
+
+    private static final ValueTokens.Rewriter _HEX_COLORS = new ValueTokens.Rewriter() {
+        @Override
+        public String rewrite(String token) {
+            return token.startsWith("#") ? shortHex(token) : token;
+        }
+    };
+
+    private static final ValueTokens.Rewriter _NAMED_COLORS = new ValueTokens.Rewriter() {
+        @Override
+        public String rewrite(String token) {
+            if (token.startsWith("#")) {
+                String hex = shortHex(token);
+                String name = _SHORTER_NAMES.get(hex.toLowerCase(Locale.ENGLISH));
+                return name != null ? name : hex;
+            }
+            String hex = _SHORTER_HEX.get(token.toLowerCase(Locale.ENGLISH));
+            return hex != null ? hex : token;
+        }
+    };
+
+    private static final ValueTokens.Rewriter _NUMBERS = new ValueTokens.Rewriter() {
+        @Override
+        public String rewrite(String token) {
+            Matcher number = number(token);
+            if (number == null) {
+                return token;
+            }
+            String integer = trimLeading(number.group(2));
+            String fraction = number.group(3) == null ? "" : trimTrailing(number.group(3));
+            if (integer.isEmpty() && fraction.isEmpty()) {
+                return "0" + number.group(4);
+            }
+            return number.group(1) + integer + (fraction.isEmpty() ? "" : "." + fraction) + number.group(4);
+        }
+    };
+
+    private static final ValueTokens.Rewriter _ZERO_LENGTHS = new ValueTokens.Rewriter() {
+        @Override
+        public String rewrite(String token) {
+            Matcher number = number(token);
+            if (number == null || !_LENGTH_UNITS.contains(number.group(4).toLowerCase(Locale.ENGLISH))) {
+                return token;
+            }
+            String digits = number.group(2) + (number.group(3) == null ? "" : number.group(3));
+            return trimLeading(digits).isEmpty() ? "0" : token;
+        }
+    };
+
+    private static final ValueTokens.Rewriter _FONT_WEIGHTS = new ValueTokens.Rewriter() {
+        @Override
+        public String rewrite(String token) {
+            if (token.equalsIgnoreCase("normal")) {
+                return "400";
+            }
+            if (token.equalsIgnoreCase("bold")) {
+                return "700";
+            }
+            return token;
+        }
+    };
+
+    @Override
+    public String minify(String name, String value) {
+        if (name.startsWith("--") || value.contains("progid:") || value.contains("expression(")) {
+            return value;
+        }
+        return minifyValue(name, value);
+    }
+
+    abstract String minifyValue(String name, String value);
+
+    /**
+     * @param passes
+     *            the option names of passes separated by comma, like <code>colors,zero-units</code>, or
+     *            <code>all</code>
+     * @return the passes
+     */
+    public static List<ValuePass> named(String passes) {
+        if (passes.trim().equalsIgnoreCase("all")) {
+            return ImmutableList.<ValuePass> copyOf(values());
+        }
+        List<ValuePass> result = Lists.newArrayList();
+        for (String pass : Splitter.on(',').trimResults().omitEmptyStrings().split(passes)) {
+            try {
+                result.add(valueOf(pass.toUpperCase(Locale.ENGLISH).replace('-', '_')));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown value pass '" + pass + "'!", e);
+            }
+        }
+        return result;
+    }
+
+    private static boolean isColorProperty(String name) {
+        String lowerCase = name.toLowerCase(Locale.ENGLISH);
+        return lowerCase.equals("color") || lowerCase.endsWith("-color") || _COLOR_PROPERTIES.contains(lowerCase);
+    }
+
+    /**
+     * @return the matched number, <code>null</code> if the token is none
+     */
+    private static Matcher number(String token) {
+        char first = token.charAt(0);
+        if (!Character.isDigit(first) && first != '.' && first != '+' && first != '-') {
+            return null;
+        }
+        Matcher number = _NUMBER.matcher(token);
+        if (!number.matches() || (number.group(2).isEmpty() && number.group(3) == null)) {
+            return null;
+        }
+        return number;
+    }
+
+    private static String shortHex(String token) {
+        if (!_HEX_COLOR.matcher(token).matches() || (token.length() != 7 && token.length() != 9)) {
+            return token;
+        }
+        StringBuilder result = new StringBuilder("#");
+        for (int i = 1; i < token.length(); i += 2) {
+            if (Character.toLowerCase(token.charAt(i)) != Character.toLowerCase(token.charAt(i + 1))) {
+                return token;
+            }
+            result.append(Character.toLowerCase(token.charAt(i)));
+        }
+        return result.toString();
+    }
+
+    private static String rgbToHex(String value) {
+        Matcher rgb = _RGB.matcher(value);
+        if (!rgb.find()) {
+            return value;
+        }
+        StringBuffer result = new StringBuffer(value.length());
+        do {
+            StringBuilder hex = new StringBuilder("#");
+            boolean valid = true;
+            for (int i = 1; i <= 3; i++) {
+                int component = Integer.parseInt(rgb.group(i));
+                valid &= component <= 255;
+                hex.append(Character.forDigit(component >> 4, 16)).append(Character.forDigit(component & 15, 16));
+            }
+            rgb.appendReplacement(result, valid ? shortHex(hex.toString()) : "$0");
+        } while (rgb.find());
+        rgb.appendTail(result);
+        return result.toString();
+    }
+
+    private static String unquoteUrls(String value) {
+        StringBuilder result = null;
+        int copied = 0;
+        int i = 0;
+        while (i < value.length()) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\'') {
+                i = ValueTokens.endOfString(value, i);
+                continue;
+            }
+            if (!value.regionMatches(true, i, "url(", 0, 4) || (i > 0 && isNamePart(value.charAt(i - 1)))) {
+                i++;
+                continue;
+            }
+            int start = i + 4;
+            int end = ValueTokens.endOfUrl(value, start);
+            String url = value.substring(start, end - 1).trim();
+            if (url.length() > 2 && (url.charAt(0) == '"' || url.charAt(0) == '\'') && url.charAt(url.length() - 1) == url.charAt(0)
+                    && isUnquotedUrl(url.substring(1, url.length() - 1))) {
+                if (result == null) {
+                    result = new StringBuilder(value.length());
+                }
+                result.append(value, copied, start).append(url, 1, url.length() - 1).append(')');
+                copied = end;
+            }
+            i = end;
+        }
+        if (result == null) {
+            return value;
+        }
+        return result.append(value, copied, value.length()).toString();
+    }
+
+    private static boolean isUnquotedUrl(String url) {
+        for (int i = 0; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c <= ' ' || c == '"' || c == '\'' || c == '(' || c == ')' || c == '\\' || c == 0x7f) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String unquoteFamilies(String value) {
+        StringBuilder result = null;
+        int copied = 0;
+        int i = 0;
+        while (i < value.length()) {
+            char c = value.charAt(i);
+            if (c != '"' && c != '\'') {
+                i++;
+                continue;
+            }
+            int end = ValueTokens.endOfString(value, i);
+            String family = value.substring(i + 1, end - 1);
+            if (end - 1 > i && value.charAt(end - 1) == c && isUnquotedFamily(family)) {
+                if (result == null) {
+                    result = new StringBuilder(value.length());
+                }
+                result.append(value, copied, i).append(family);
+                copied = end;
+            }
+            i = end;
+        }
+        if (result == null) {
+            return value;
+        }
+        return result.append(value, copied, value.length()).toString();
+    }
+
+    private static boolean isUnquotedFamily(String family) {
+        if (!_IDENTIFIERS.matcher(family).matches()) {
+            return false;
+        }
+        for (String word : family.split(" ")) {
+            if (word.startsWith("--") || _KEYWORDS.contains(word.toLowerCase(Locale.ENGLISH))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isNamePart(char c) {
+        return Character.isLetterOrDigit(c) || c == '-' || c == '_';
+    }
+
+    private static String trimLeading(String digits) {
+        int i = 0;
+        while (i < digits.length() && digits.charAt(i) == '0') {
+            i++;
+        }
+        return digits.substring(i);
+    }
+
+    private static String trimTrailing(String digits) {
+        int i = digits.length();
+        while (i > 0 && digits.charAt(i - 1) == '0') {
+            i--;
+        }
+        return digits.substring(0, i);
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css.parser;
+
+/**
+ * Finds the tokens of values which are not part of a string or an URL, like numbers, colors and keywords. Tokens are
+ * separated by whitespace, <code>,()/!</code> and strings.
+ *
+ * @author hoersch
+ */
+final class ValueTokens {
+
+    /**
+     * Rewrites single tokens.
+     */
+    interface Rewriter {
+
+        /**
+         * @return the token or its replacement
+         */
+        String rewrite(String token);
+    }
+
+    private ValueTokens() {
+    }
+
+    /**
+     * @return the value with all tokens rewritten, the given instance if nothing is changed
+     */
+    static String rewrite(String value, Rewriter rewriter) {
+        StringBuilder result = null;
+        int copied = 0;
+        int length = value.length();
+        int i = 0;
+        while (i < length) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\'') {
+                i = endOfString(value, i);
+                continue;
+            }
+            if (isSeparator(c)) {
+                i++;
+                continue;
+            }
+            int end = i;
+            while (end < length && !isSeparator(value.charAt(end)) && value.charAt(end) != '"' && value.charAt(end) != '\'') {
+                end++;
+            }
+            if (end < length && value.charAt(end) == '(' && value.regionMatches(true, i, "url", 0, 3) && end - i == 3) {
+                i = endOfUrl(value, end + 1);
+                continue;
+            }
+
+            String token = value.substring(i, end);
+            String rewritten = rewriter.rewrite(token);
+            if (!rewritten.equals(token)) {
+                if (result == null) {
+                    result = new StringBuilder(length);
+                }
+                result.append(value, copied, i).append(rewritten);
+                copied = end;
+            }
+            i = end;
+        }
+        if (result == null) {
+            return value;
+        }
+        return result.append(value, copied, length).toString();
+    }
+
+    /**
+     * @param start
+     *            position of the opening quote
+     * @return the position after the closing quote
+     */
+    static int endOfString(String value, int start) {
+        char quote = value.charAt(start);
+        int i = start + 1;
+        while (i < value.length() && value.charAt(i) != quote) {
+            i += value.charAt(i) == '\\' ? 2 : 1;
+        }
+        return Math.min(i + 1, value.length());
+    }
+
+    /**
+     * @param start
+     *            position after the opening parenthesis
+     * @return the position after the closing parenthesis
+     */
+    static int endOfUrl(String value, int start) {
+        int i = start;
+        while (i < value.length() && value.charAt(i) != ')') {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\'') {
+                i = endOfString(value, i);
+            } else {
+                i += c == '\\' ? 2 : 1;
+            }
+        }
+        return Math.min(i + 1, value.length());
+    }
+
+    private static boolean isSeparator(char c) {
+        return Character.isWhitespace(c) || c == ',' || c == '(' || c == ')' || c == '/' || c == '!';
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Emits the measurements as Java Flight Recorder events of the category 'css-utils', to be recorded together with the
+ * events of the JVM. Needs Java 11 and is only built with it.
+ *
+ * <pre>
+ * Metrics.add(new JfrMetrics());
+ * </pre>
+ *
+ * @author hoersch
+ */
+public final class JfrMetrics implements MetricsListener {
+
+    @Override
+    public void phase(Phase phase, long nanos, long input, long output) {
+        PhaseEvent event = new PhaseEvent();
+        if (event.isEnabled()) {
+            event.phase = phase.name();
+            event.elapsed = nanos;
+            event.input = input;
+            event.output = output;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void parsed(long rules, long selectors, long declarations) {
+        ParsedEvent event = new ParsedEvent();
+        if (event.isEnabled()) {
+            event.rules = rules;
+            event.selectors = selectors;
+            event.declarations = declarations;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void merged(Phase phase, int before, int after) {
+        MergedEvent event = new MergedEvent();
+        if (event.isEnabled()) {
+            event.phase = phase.name();
+            event.before = before;
+            event.after = after;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void resolved(String url, long nanos, boolean cached) {
+        ResolvedEvent event = new ResolvedEvent();
+        if (event.isEnabled()) {
+            event.url = url;
+            event.elapsed = nanos;
+            event.cached = cached;
+            event.commit();
+        }
+    }
+
+    @Name("de.dennishoersch.web.css.Phase")
+    @Label("Phase")
+    @Category("css-utils")
+    static class PhaseEvent extends Event {
+        @Label("Phase")
+        String phase;
+        @Label("Elapsed")
+        @Timespan
+        long elapsed;
+        @Label("Input Characters")
+        long input;
+        @Label("Output Characters")
+        long output;
+    }
+
+    @Name("de.dennishoersch.web.css.Parsed")
+    @Label("Parsed")
+    @Category("css-utils")
+    static class ParsedEvent extends Event {
+        @Label("Rules")
+        long rules;
+        @Label("Selectors")
+        long selectors;
+        @Label("Declarations")
+        long declarations;
+    }
+
+    @Name("de.dennishoersch.web.css.Merged")
+    @Label("Merged")
+    @Category("css-utils")
+    static class MergedEvent extends Event {
+        @Label("Phase")
+        String phase;
+        @Label("Rules Before")
+        int before;
+        @Label("Rules After")
+        int after;
+    }
+
+    @Name("de.dennishoersch.web.css.ImageResolved")
+    @Label("Image Resolved")
+    @Category("css-utils")
+    static class ResolvedEvent extends Event {
+        @Label("URL")
+        String url;
+        @Label("Elapsed")
+        @Timespan
+        long elapsed;
+        @Label("Cached")
+        boolean cached;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.dennishoersch.web.css.images.ImagesInliner;
+import de.dennishoersch.web.css.images.resolver.FilesystemPathResolver;
+
+/**
+ * @author hoersch
+ *
+ */
+public class BatchTest {
+    private static final String _CSS = ".a { color: red }\n.b { color: red; background: url(src/test/resources/test-image-green.png) }\n.a { padding: 0 }";
+
+    @Rule
+    public TemporaryFolder _folder = new TemporaryFolder();
+
+    private final ForkJoinPool _pool = new ForkJoinPool(2);
+    private Path _dir;
+
+    @Before
+    public void createDir() {
+        _dir = _folder.getRoot().toPath();
+    }
+
+    @After
+    public void shutdown() {
+        _pool.shutdown();
+    }
+
+    @Test
+    public void test_jobs_from_lines() {
+        List<Batch.Job> jobs = Batch.jobs(Arrays.asList("# comment", "", "a.css:out/a.css", " b.css, c.css : out/bc.css "));
+        assertThat(jobs.size(), is(2));
+        assertThat(Arrays.asList(jobs.get(1)._inputs), is(Arrays.asList("b.css", "c.css")));
+        assertThat(jobs.get(1)._output.toString(), is("out/bc.css"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_job_without_output() {
+        Batch.jobs(Arrays.asList("a.css"));
+    }
+
+    @Test
+    public void test_same_as_single_runs() throws IOException {
+        Path input = _dir.resolve("in.css");
+        Files.write(input, _CSS.getBytes());
+        List<Batch.Job> jobs = Batch.jobs(Arrays.asList(input + ":" + _dir.resolve("out/1.css"), input + ":" + _dir.resolve("out/2.css")));
+
+        ImagesInliner inliner = ImagesInliner.with(new FilesystemPathResolver());
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        assertThat(new Batch("combined", inliner, _pool).run(jobs, new PrintStream(report, true)), is(0));
+
+        StringWriter expected = new StringWriter();
+        Combined.combine(new StringReader(_CSS), expected, inliner);
+        assertThat(read(_dir.resolve("out/1.css")), is(expected.toString()));
+        assertThat(read(_dir.resolve("out/2.css")), is(expected.toString()));
+        assertThat(report.toString(), containsString("for 2 jobs, 0 failed"));
+    }
+
+    @Test
+    public void test_parsed_dropped_when_jobs_finished() throws IOException {
+        Path input = _dir.resolve("in.css");
+        Files.write(input, _CSS.getBytes());
+        Path missing = _dir.resolve("missing.css");
+        List<Batch.Job> jobs = Batch.jobs(Arrays.asList(input + ":" + _dir.resolve("1.css"), input + ":" + _dir.resolve("2.css"), missing + ":" + _dir.resolve("3.css")));
+
+        Batch batch = new Batch("normalize", ImagesInliner.with(new FilesystemPathResolver()), _pool);
+        assertThat(batch.run(jobs, new PrintStream(new ByteArrayOutputStream(), true)), is(1));
+
+        assertThat(batch._parsed.isEmpty(), is(true));
+        assertThat(read(_dir.resolve("2.css")), is(read(_dir.resolve("1.css"))));
+    }
+
+    @Test
+    public void test_failed_job_reported() throws IOException {
+        List<Batch.Job> jobs = Batch.jobs(Arrays.asList(_dir.resolve("missing.css") + ":" + _dir.resolve("out.css")));
+
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        assertThat(new Batch("normalize", ImagesInliner.with(), _pool).run(jobs, new PrintStream(report, true)), is(1));
+        assertThat(report.toString(), containsString("FAILED"));
+    }
+
+    @Test
+    public void test_fingerprinted_outputs_in_manifest() throws IOException {
+        Path input = _dir.resolve("in.css");
+        Files.write(input, _CSS.getBytes());
+        List<Batch.Job> jobs = Batch.jobs(Arrays.asList(input + ":" + _dir.resolve("out/1.css")));
+
+        Manifest manifest = Manifest.read(_dir.resolve("out/manifest.json"));
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        assertThat(new Batch("normalize", ImagesInliner.with(), _pool, manifest).run(jobs, new PrintStream(report, true)), is(0));
+
+        String fingerprinted = Manifest.read(_dir.resolve("out/manifest.json")).entries().get("1.css");
+        assertThat(fingerprinted, startsWith("1."));
+        assertThat(report.toString(), containsString(" -> " + fingerprinted));
+        assertThat(Files.exists(_dir.resolve("out").resolve(fingerprinted)), is(true));
+    }
+
+    private static String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), Charset.defaultCharset());
+    }
+}
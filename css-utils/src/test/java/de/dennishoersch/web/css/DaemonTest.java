@@ -0,0 +1,207 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import de.dennishoersch.web.css.images.ImagesInliner;
+import de.dennishoersch.web.css.images.resolver.FilesystemPathResolver;
+
+/**
+ * @author hoersch
+ *
+ */
+public class DaemonTest {
+    private static final String _CSS = ".a { color: red }\n.b { color: red; background: url(src/test/resources/test-image-green.png) }\n.a { padding: 0 }";
+
+    @Rule
+    public TemporaryFolder _folder = new TemporaryFolder();
+
+    private Daemon _daemon;
+
+    @Before
+    public void startDaemon() throws IOException {
+        _daemon = new Daemon(0, _folder.getRoot().toPath().resolve("daemon.token"));
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    _daemon.run();
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }.start();
+    }
+
+    @After
+    public void stopDaemon() throws IOException {
+        _daemon.close();
+    }
+
+    @Test
+    public void test_normalize_stdin() throws IOException {
+        StringWriter expected = new StringWriter();
+        Normalizer.normalize(new StringReader(_CSS), expected);
+
+        assertThat(run(DaemonProtocol.NORMALIZE, _CSS), is(expected.toString()));
+    }
+
+    @Test
+    public void test_combined_and_inline() throws IOException {
+        StringWriter expected = new StringWriter();
+        Combined.combine(new StringReader(_CSS), expected, ImagesInliner.with(new FilesystemPathResolver()));
+
+        assertThat(run(DaemonProtocol.COMBINED, _CSS), is(expected.toString()));
+        assertThat(run(DaemonProtocol.INLINE, _CSS), containsString("data:image/png;base64,"));
+    }
+
+    @Test
+    public void test_images_resolved_in_working_directory_of_client() throws IOException {
+        Path resources = Paths.get("src/test/resources").toAbsolutePath();
+        String css = ".b{background:url(test-image-green.png)}";
+
+        // Not resolved in the working directory of the daemon
+        assertThat(run(DaemonProtocol.COMBINED, Paths.get(""), new Properties(), css), containsString("url(test-image-green.png)"));
+        assertThat(run(DaemonProtocol.COMBINED, resources, new Properties(), css), containsString("data:image/png;base64,"));
+    }
+
+    @Test
+    public void test_options_of_client() throws IOException {
+        String css = ".a{color:#ff0000;margin:0px}";
+        Properties options = new Properties();
+        options.setProperty(Normalizer.MINIFY_PROPERTY, "all");
+        StringWriter expected = new StringWriter();
+        Normalizer.normalize(new StringReader(css), expected, options);
+
+        assertThat(run(DaemonProtocol.NORMALIZE, Paths.get(""), options, css), is(expected.toString()));
+        assertThat(expected.toString(), containsString(".a{color:red;margin:0;}"));
+    }
+
+    @Test
+    public void test_unsupported_option() throws IOException {
+        Properties options = new Properties();
+        options.setProperty(Output.GZIP_PROPERTY, "true");
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+        int exitCode = DaemonClient.run(_daemon.getPort(), _daemon.getTokenFile(), DaemonProtocol.NORMALIZE, Paths.get(""), options, new String[0],
+                        new ByteArrayInputStream(new byte[0]), new ByteArrayOutputStream(), new PrintStream(err, true));
+
+        assertThat(exitCode, is(1));
+        assertThat(err.toString(), containsString("'css-utils.gzip' is not supported"));
+    }
+
+    @Test
+    public void test_images_cached_between_jobs() throws IOException {
+        final byte[] image = Files.readAllBytes(Paths.get("src/test/resources/test-image-green.png"));
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.getResponseHeaders().add("Content-Type", "image/png");
+                exchange.sendResponseHeaders(200, image.length);
+                try (OutputStream body = exchange.getResponseBody()) {
+                    body.write(image);
+                }
+            }
+        });
+        server.start();
+        String css = ".b{background:url(http://localhost:" + server.getAddress().getPort() + "/image.png)}";
+        String inlined;
+        try {
+            inlined = run(DaemonProtocol.COMBINED, css);
+        } finally {
+            server.stop(0);
+        }
+
+        // Not downloaded again
+        assertThat(inlined, containsString("data:image/png;base64,"));
+        assertThat(run(DaemonProtocol.COMBINED, css), is(inlined));
+    }
+
+    @Test
+    public void test_token_owner_only() throws IOException {
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(_daemon.getTokenFile())), is("rw-------"));
+        }
+    }
+
+    @Test
+    public void test_client_without_token() throws IOException {
+        Path wrongToken = _folder.newFile("wrong.token").toPath();
+        Files.write(wrongToken, "guessed".getBytes(Charset.defaultCharset()));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+        int exitCode = DaemonClient.run(_daemon.getPort(), wrongToken, DaemonProtocol.COMBINED, Paths.get(""), new Properties(),
+                        new String[] { Paths.get("src/test/resources/test-image-green.png").toAbsolutePath().toString() }, null, out, new PrintStream(err, true));
+
+        assertThat(exitCode, is(1));
+        assertThat(out.size(), is(0));
+        assertThat(err.toString(), containsString("Not authorized"));
+    }
+
+    @Test
+    public void test_missing_file() throws IOException {
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+        int exitCode = DaemonClient.run(_daemon.getPort(), _daemon.getTokenFile(), DaemonProtocol.NORMALIZE, Paths.get(""), new Properties(),
+                        new String[] { "missing.css" }, null, new ByteArrayOutputStream(), new PrintStream(err, true));
+
+        assertThat(exitCode, is(1));
+        assertThat(err.toString(), containsString("does not exist"));
+    }
+
+    private String run(String command, String stdIn) throws IOException {
+        return run(command, Paths.get(""), new Properties(), stdIn);
+    }
+
+    private String run(String command, Path workingDirectory, Properties options, String stdIn) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int exitCode = DaemonClient.run(_daemon.getPort(), _daemon.getTokenFile(), command, workingDirectory, options, new String[0],
+                        new ByteArrayInputStream(stdIn.getBytes(Charset.defaultCharset())), out, System.err);
+        assertThat(exitCode, is(0));
+        return new String(out.toByteArray(), Charset.defaultCharset());
+    }
+}
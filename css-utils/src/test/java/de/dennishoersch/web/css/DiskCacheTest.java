@@ -0,0 +1,82 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author hoersch
+ *
+ */
+public class DiskCacheTest {
+
+    @Rule
+    public TemporaryFolder _folder = new TemporaryFolder();
+
+    @Test
+    public void test_least_recently_used_evicted() throws IOException {
+        DiskCache cache = new DiskCache(_folder.getRoot().toPath(), "entry", 1, 10);
+        cache.put("a", new byte[4]);
+        cache.put("b", new byte[4]);
+        assertThat(cache.get("a"), is(notNullValue()));
+        cache.put("c", new byte[4]);
+
+        assertThat(cache.getSize(), is(8L));
+        assertThat(cache.get("b"), is(nullValue()));
+        assertThat(cache.get("a"), is(notNullValue()));
+        assertThat(cache.get("c"), is(notNullValue()));
+    }
+
+    @Test
+    public void test_other_versions_aged_out() throws IOException {
+        Path directory = _folder.getRoot().toPath();
+        DiskCache old = new DiskCache(directory, "entry", 1, 10);
+        old.put("a", new byte[4]);
+
+        DiskCache cache = new DiskCache(directory, "entry", 2, 10);
+        assertThat(cache.getSize(), is(4L));
+        assertThat(old.get("a"), is(notNullValue()));
+
+        cache.put("b", new byte[4]);
+        cache.put("c", new byte[4]);
+        assertThat(old.get("a"), is(nullValue()));
+        assertThat(cache.get("b"), is(notNullValue()));
+    }
+
+    @Test
+    public void test_stale_temporary_files_deleted() throws IOException {
+        Path directory = _folder.getRoot().toPath();
+        Path stale = Files.createFile(directory.resolve("a.v1.entry123.tmp"));
+        Files.setLastModifiedTime(stale, FileTime.fromMillis(System.currentTimeMillis() - 24 * 60 * 60 * 1000L));
+        Path written = Files.createFile(directory.resolve("b.v1.entry456.tmp"));
+
+        new DiskCache(directory, "entry", 1, 10);
+        assertThat(Files.exists(stale), is(false));
+        assertThat(Files.exists(written), is(true));
+    }
+}
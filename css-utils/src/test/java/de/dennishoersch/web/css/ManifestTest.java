@@ -0,0 +1,86 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * @author hoersch
+ *
+ */
+public class ManifestTest {
+    @Rule
+    public TemporaryFolder _folder = new TemporaryFolder();
+
+    private Path _dir;
+
+    @Before
+    public void createDir() throws IOException {
+        _dir = _folder.getRoot().toPath();
+    }
+
+    @Test
+    public void test_written_and_read() throws IOException {
+        Manifest manifest = Manifest.read(_dir.resolve("manifest.json"));
+        manifest.put(_dir.resolve("b.css"), _dir.resolve("b.1.css"));
+        manifest.put(_dir.resolve("css/a \"quoted\".css"), _dir.resolve("css/a.2.css"));
+        manifest.write();
+
+        assertThat(new String(Files.readAllBytes(_dir.resolve("manifest.json")), "UTF-8"),
+                is("{\n  \"b.css\": \"b.1.css\",\n  \"css/a \\\"quoted\\\".css\": \"css/a.2.css\"\n}\n"));
+        assertThat(Manifest.read(_dir.resolve("manifest.json")).entries(),
+                is(ImmutableMap.of("b.css", "b.1.css", "css/a \"quoted\".css", "css/a.2.css")));
+    }
+
+    @Test
+    public void test_other_entries_kept() throws IOException {
+        Files.write(_dir.resolve("manifest.json"), "{\"a.css\":\"a.1.css\" , \"b.css\" : \"b.1.css\"}".getBytes("UTF-8"));
+        Manifest manifest = Manifest.read(_dir.resolve("manifest.json"));
+        manifest.put(_dir.resolve("b.css"), _dir.resolve("b.2.css"));
+
+        assertThat(manifest.entries(), is(ImmutableMap.of("a.css", "a.1.css", "b.css", "b.2.css")));
+    }
+
+    @Test
+    public void test_concurrent_runs_merged() throws IOException {
+        Manifest first = Manifest.read(_dir.resolve("manifest.json"));
+        Manifest second = Manifest.read(_dir.resolve("manifest.json"));
+        first.put(_dir.resolve("a.css"), _dir.resolve("a.1.css"));
+        second.put(_dir.resolve("b.css"), _dir.resolve("b.1.css"));
+        first.write();
+        second.write();
+
+        assertThat(Manifest.read(_dir.resolve("manifest.json")).entries(), is(ImmutableMap.of("a.css", "a.1.css", "b.css", "b.1.css")));
+    }
+
+    @Test(expected = IOException.class)
+    public void test_no_json_object() throws IOException {
+        Files.write(_dir.resolve("manifest.json"), "[\"a.css\"]".getBytes("UTF-8"));
+        Manifest.read(_dir.resolve("manifest.json"));
+    }
+}
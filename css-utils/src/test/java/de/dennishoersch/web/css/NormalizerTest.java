@@ -0,0 +1,77 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.dennishoersch.web.css.parser.ParseCache;
+
+/**
+ * @author hoersch
+ *
+ */
+public class NormalizerTest {
+    private static final String _CSS = ".a { color: red }\n.b { color: red }\n.a { padding: 0 }";
+
+    @Rule
+    public TemporaryFolder _folder = new TemporaryFolder();
+
+    @Test
+    public void test_parse_cache_not_configured() throws IOException {
+        assertThat(Normalizer.openParseCache(new Properties()), is(nullValue()));
+    }
+
+    @Test
+    public void test_parse_cache_same_result() throws IOException {
+        Path dir = _folder.getRoot().toPath();
+        Properties properties = new Properties();
+        properties.setProperty(Normalizer.PARSE_CACHE_PROPERTY, dir.toString());
+        ParseCache cache = Normalizer.openParseCache(properties);
+        assertThat(cache, is(notNullValue()));
+
+        String expected = normalize(null);
+        assertThat(normalize(cache), is(expected));
+        assertThat(isEmpty(dir), is(false));
+        assertThat(normalize(cache), is(expected));
+    }
+
+    private static String normalize(ParseCache cache) throws IOException {
+        StringWriter result = new StringWriter();
+        Normalizer.write(Normalizer.parse(new StringReader(_CSS), cache), result, new Properties());
+        return result.toString();
+    }
+
+    private static boolean isEmpty(Path dir) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            return !files.iterator().hasNext();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Iterables;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+
+/**
+ * @author hoersch
+ *
+ */
+public class OutputTest {
+    private static final String _CSS = ".a{color:red;}.b{color:red;}.c{color:red;}";
+
+    @Rule
+    public TemporaryFolder _folder = new TemporaryFolder();
+
+    private Path _dir;
+
+    @Before
+    public void createDir() throws IOException {
+        _dir = _folder.getRoot().toPath();
+    }
+
+    @Test
+    public void test_written_and_compressed_in_one_pass() throws IOException {
+        Path file = _dir.resolve("out/a.css");
+        Output output;
+        try (Output result = Output.open(file, true, null)) {
+            output = result;
+            result.writer().write(_CSS);
+            result.commit();
+        }
+
+        assertThat(new String(Files.readAllBytes(file), "UTF-8"), is(_CSS));
+        assertThat(output.size(), is((long) _CSS.length()));
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(_dir.resolve("out/a.css.gz")))) {
+            assertThat(new String(ByteStreams.toByteArray(in), "UTF-8"), is(_CSS));
+        }
+        assertThat(output.compressedSize(), is(Files.size(_dir.resolve("out/a.css.gz"))));
+    }
+
+    @Test
+    public void test_not_compressed() throws IOException {
+        Path file = _dir.resolve("a.css");
+        Output output;
+        try (Output result = Output.open(file, false, null)) {
+            output = result;
+            result.writer().write(_CSS);
+            result.commit();
+        }
+
+        assertThat(output.size(), is((long) _CSS.length()));
+        assertThat(output.compressedSize(), is(-1L));
+        assertThat(Files.exists(_dir.resolve("a.css.gz")), is(false));
+    }
+
+    @Test
+    public void test_fingerprinted() throws IOException {
+        Manifest manifest = Manifest.read(_dir.resolve("manifest.json"));
+        Output output = write(_dir.resolve("css/a.css"), manifest);
+
+        Path fingerprinted = _dir.resolve("css/a." + Hashing.sha256().hashString(_CSS, Charsets.UTF_8).toString().substring(0, 16) + ".css");
+        assertThat(output.file(), is(fingerprinted));
+        assertThat(output.isUnchanged(), is(false));
+        assertThat(Files.exists(_dir.resolve("css/a.css")), is(false));
+        assertThat(new String(Files.readAllBytes(fingerprinted), "UTF-8"), is(_CSS));
+        assertThat(Files.exists(Output.gzipped(fingerprinted)), is(true));
+        assertThat(manifest.entries().get("css/a.css"), is("css/" + fingerprinted.getFileName()));
+
+        // Same content again, the temporary files are deleted
+        assertThat(write(_dir.resolve("css/a.css"), manifest).isUnchanged(), is(true));
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(_dir.resolve("css"))) {
+            assertThat(Iterables.size(files), is(2));
+        }
+    }
+
+    @Test
+    public void test_not_committed() throws IOException {
+        Path file = _dir.resolve("a.css");
+        Files.write(file, "last".getBytes("UTF-8"));
+        Manifest manifest = Manifest.read(_dir.resolve("manifest.json"));
+
+        for (Manifest fingerprinted : Arrays.asList(null, manifest)) {
+            try (Output result = Output.open(file, true, fingerprinted)) {
+                result.writer().write(".a{col");
+                // Failed
+            }
+        }
+
+        assertThat(new String(Files.readAllBytes(file), "UTF-8"), is("last"));
+        assertThat(manifest.entries().isEmpty(), is(true));
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(_dir)) {
+            assertThat(Iterables.size(files), is(1));
+        }
+    }
+
+    @Test
+    public void test_fingerprinted_names() {
+        HashCode hash = Hashing.sha256().hashString("");
+        assertThat(Output.fingerprinted(Paths.get("dist/a.min.css"), hash).toString(), is(Paths.get("dist/a.min.e3b0c44298fc1c14.css").toString()));
+        assertThat(Output.fingerprinted(Paths.get("styles"), hash).toString(), is("styles.e3b0c44298fc1c14"));
+    }
+
+    private static Output write(Path file, Manifest manifest) throws IOException {
+        Output output;
+        try (Output result = Output.open(file, true, manifest)) {
+            output = result;
+            result.writer().write(_CSS);
+            result.commit();
+        }
+        return output;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css.images;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.apache.commons.codec.binary.Base64;
+import org.junit.Test;
+
+/**
+ * @author hoersch
+ *
+ */
+public class Base64EncoderTest {
+
+    @Test
+    public void test_encoded_as_by_commons_codec() throws IOException {
+        Random random = new Random(42);
+        for (int length : new int[] { 0, 1, 2, 3, 4, 5, 3071, 3072, 3073, 3074, 10000 }) {
+            byte[] bytes = new byte[length];
+            random.nextBytes(bytes);
+            String expected = Base64.encodeBase64String(bytes);
+
+            StringWriter fromBuffer = new StringWriter();
+            new Base64Encoder().encode(ByteBuffer.wrap(bytes), fromBuffer);
+            assertThat(fromBuffer.toString(), is(expected));
+
+            StringWriter fromStream = new StringWriter();
+            new Base64Encoder().encode(new ByteArrayInputStream(bytes), fromStream);
+            assertThat(fromStream.toString(), is(expected));
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css.images;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+
+import de.dennishoersch.web.css.images.resolver.URLContent;
+
+/**
+ * @author hoersch
+ *
+ */
+public class ContentTypeDetectorTest {
+
+    private final ContentTypeDetector _detector = new ContentTypeDetector();
+
+    @Test
+    public void test_detected_by_content() throws IOException {
+        assertThat(detect("image", URLContent.of(Paths.get("src/test/resources/test-image-green.png"))), is("image/png"));
+        assertThat(detect("image", URLContent.of(Paths.get("src/test/resources/test-image-red.jpg"))), is("image/jpeg"));
+        assertThat(detect("image", content("GIF89a...", null)), is("image/gif"));
+        assertThat(detect("image", content("RIFF....WEBPVP8 ", null)), is("image/webp"));
+        assertThat(detect("image", content("wOF2....", null)), is("font/woff2"));
+        assertThat(detect("image", content("  <svg xmlns=\"http://www.w3.org/2000/svg\"/>", null)), is("image/svg+xml"));
+        assertThat(detect("image", content("<?xml version=\"1.0\"?>\n<svg/>", null)), is("image/svg+xml"));
+    }
+
+    @Test
+    public void test_content_type_and_extension_as_fallback() throws IOException {
+        assertThat(detect("image", content("unknown", "image/png")), is("image/png"));
+        assertThat(detect("http://x.de/image.PNG?v=1", content("unknown", null)), is("image/png"));
+        assertThat(detect("http://x.de/image.png", content("GIF89a...", "image/png")), is("image/gif"));
+        assertThat(detect("http://x.de/image", content("unknown", null)), is(nullValue()));
+        assertThat(detect("http://x.de/some.dir/image", content("unknown", null)), is(nullValue()));
+    }
+
+    private String detect(String url, URLContent content) throws IOException {
+        return _detector.detect(url, content);
+    }
+
+    private static URLContent content(String content, String contentType) {
+        return URLContent.of(content.getBytes(Charsets.ISO_8859_1), contentType);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css.images;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Charsets;
+
+import de.dennishoersch.web.css.images.resolver.FilesystemPathResolver;
+
+/**
+ * @author hoersch
+ *
+ */
+public class DataUriCacheTest {
+
+    @Rule
+    public TemporaryFolder _folder = new TemporaryFolder();
+
+    @Test
+    public void test_cached_until_changed() throws IOException {
+        DataUriCache cache = new DataUriCache(_folder.newFolder("cache").toPath(), 1024);
+        Path image = image("abc", 0);
+
+        assertThat(cache.get(image), is(nullValue()));
+        cache.put(image, "image/png;base64,YWJj");
+        assertThat(cache.get(image), is("image/png;base64,YWJj"));
+
+        Files.write(image, "abcd".getBytes(Charsets.US_ASCII));
+        assertThat(cache.get(image), is(nullValue()));
+    }
+
+    @Test
+    public void test_content_compared_if_changed_right_after_caching() throws IOException {
+        DataUriCache cache = new DataUriCache(_folder.newFolder("cache").toPath(), 1024);
+        long modified = System.currentTimeMillis();
+        Path image = image("abc", modified);
+
+        cache.put(image, "image/png;base64,YWJj");
+        assertThat(cache.get(image), is("image/png;base64,YWJj"));
+
+        // Same size and modification time
+        image("xyz", modified);
+        assertThat(cache.get(image), is(nullValue()));
+    }
+
+    @Test
+    public void test_inlined_from_cache() throws IOException {
+        String stylesheet = ".a{background:url(src/test/resources/test-image-green.png)}";
+        ImagesInliner inliner = ImagesInliner.with(new FilesystemPathResolver());
+        ImagesInliner cached = inliner.cachedIn(new DataUriCache(_folder.newFolder("cache").toPath(), 1024 * 1024));
+
+        assertThat(cached.process(stylesheet), is(inliner.process(stylesheet)));
+        assertThat(cached.process(stylesheet), is(inliner.process(stylesheet)));
+    }
+
+    private Path image(String content, long modified) throws IOException {
+        Path image = _folder.getRoot().toPath().resolve("image");
+        Files.write(image, content.getBytes(Charsets.US_ASCII));
+        Files.setLastModifiedTime(image, FileTime.fromMillis(modified));
+        return image;
+    }
+}
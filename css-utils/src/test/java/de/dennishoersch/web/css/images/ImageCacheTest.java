@@ -0,0 +1,120 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css.images;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.dennishoersch.web.css.images.resolver.FilesystemPathResolver;
+
+/**
+ * @author hoersch
+ *
+ */
+public class ImageCacheTest {
+
+    @Rule
+    public TemporaryFolder _folder = new TemporaryFolder();
+
+    @Test
+    public void test_least_recently_used_evicted() throws IOException {
+        ImageCache cache = new ImageCache(10);
+
+        cache.put("a", "12345");
+        cache.put("b", "12345");
+        assertThat(cache.writeTo("a", new StringWriter()), is(Boolean.TRUE));
+        cache.put("c", "12345");
+
+        assertThat(cache.getSize(), is(10L));
+        assertThat(cache.getEvictions(), is(1L));
+        assertThat(cache.writeTo("b", new StringWriter()), is(nullValue()));
+
+        StringWriter written = new StringWriter();
+        assertThat(cache.writeTo("a", written), is(Boolean.TRUE));
+        assertThat(written.toString(), is("data:12345"));
+    }
+
+    @Test
+    public void test_inlined_from_cache() throws IOException {
+        String stylesheet = ".a{background:url(src/test/resources/test-image-green.png)}.b{background:url(unknown.png)}";
+        ImagesInliner inliner = ImagesInliner.with(new FilesystemPathResolver());
+        ImageCache cache = new ImageCache(1024 * 1024);
+        ImagesInliner cached = inliner.cachedIn(cache);
+
+        assertThat(cached.process(stylesheet), is(inliner.process(stylesheet)));
+        assertThat(cache.getMisses(), is(1L));
+        assertThat(cached.process(stylesheet), is(inliner.process(stylesheet)));
+        assertThat(cache.getMisses(), is(1L));
+        assertThat(cache.getHits(), is(1L));
+    }
+
+    @Test
+    public void test_not_inlined_expire() throws IOException {
+        ImageCache cache = new ImageCache(10, 1, TimeUnit.MINUTES);
+        cache.putNotInlined("a");
+        assertThat(cache.writeTo("a", new StringWriter()), is(Boolean.FALSE));
+
+        cache = new ImageCache(10, 0, TimeUnit.MINUTES);
+        cache.putNotInlined("a");
+        assertThat(cache.writeTo("a", new StringWriter()), is(nullValue()));
+    }
+
+    @Test
+    public void test_changed_file_read_again() throws IOException {
+        Path image = _folder.getRoot().toPath().resolve("image.png");
+        Files.copy(Paths.get("src/test/resources/test-image-green.png"), image);
+        String stylesheet = ".a{background:url(image.png)}";
+        ImagesInliner cached = ImagesInliner.with(new FilesystemPathResolver(_folder.getRoot().toPath())).cachedIn(new ImageCache(1024 * 1024));
+        String green = cached.process(stylesheet);
+
+        Files.copy(Paths.get("src/test/resources/test-image-red.jpg"), image, StandardCopyOption.REPLACE_EXISTING);
+        Files.setLastModifiedTime(image, FileTime.fromMillis(Files.getLastModifiedTime(image).toMillis() + 2000));
+        assertThat(cached.process(stylesheet), is(not(green)));
+        assertThat(cached.process(stylesheet), containsString("data:image/jpeg;base64,"));
+    }
+
+    @Test
+    public void test_relative_urls_of_different_base_directories() throws IOException {
+        Path green = _folder.newFolder("green").toPath();
+        Path red = _folder.newFolder("red").toPath();
+        Files.copy(Paths.get("src/test/resources/test-image-green.png"), green.resolve("image"));
+        Files.copy(Paths.get("src/test/resources/test-image-red.jpg"), red.resolve("image"));
+        String stylesheet = ".a{background:url(image)}";
+        ImageCache cache = new ImageCache(1024 * 1024);
+
+        assertThat(ImagesInliner.with(new FilesystemPathResolver(green)).cachedIn(cache).process(stylesheet), containsString("data:image/png;base64,"));
+        assertThat(ImagesInliner.with(new FilesystemPathResolver(red)).cachedIn(cache).process(stylesheet), containsString("data:image/jpeg;base64,"));
+        // Missing in one base directory, but not in another
+        assertThat(ImagesInliner.with(new FilesystemPathResolver(_folder.getRoot().toPath())).cachedIn(cache).process(stylesheet), is(stylesheet));
+        assertThat(ImagesInliner.with(new FilesystemPathResolver(green)).cachedIn(cache).process(stylesheet), containsString("data:image/png;base64,"));
+    }
+}
@@ -16,13 +16,34 @@
 package de.dennishoersch.web.css.images;
 
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
 import static org.junit.Assert.assertThat;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.commons.codec.binary.Base64;
 import org.junit.Test;
 
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import de.dennishoersch.web.css.images.resolver.FilesystemPathResolver;
+import de.dennishoersch.web.css.images.resolver.HttpPathResolver;
+
 /**
  * @author hoersch
  *
@@ -93,6 +114,155 @@ public class ImagesInlinerTest {
         assertThat(result, containsString("data:image/png;base64,"));
     }
 
+    @Test
+    public void test_inline_streamed() throws IOException {
+        StringWriter result = new StringWriter();
+
+        ImagesInliner.inline(new StringReader(stylesheetPNG + "\n" + stylesheetJPG), result);
+
+        assertThat(result.toString(), is(process(stylesheetPNG + "\n" + stylesheetJPG)));
+        assertThat(result.toString(), containsString("data:image/png;base64,"));
+        assertThat(result.toString(), containsString("data:image/jpeg;base64,"));
+        assertThat(result.toString(), containsString("padding: 5px 0 5px 25px;\n}\nli { \n"));
+    }
+
+    @Test
+    public void test_inline_written() throws IOException {
+        StringWriter result = new StringWriter();
+
+        try (Writer inlining = ImagesInliner.inlining(result)) {
+            // The URL is split across writes
+            String stylesheet = stylesheetPNG + "\n" + stylesheetJPG;
+            int half = stylesheet.indexOf("url(") + 6;
+            inlining.write(stylesheet.substring(0, half));
+            inlining.write(stylesheet.substring(half));
+        }
+
+        assertThat(result.toString(), is(process(stylesheetPNG + "\n" + stylesheetJPG)));
+    }
+
+    @Test
+    public void test_inline_large_image() throws IOException {
+        byte[] image = new byte[1024 * 1024 + 1];
+        new Random(42).nextBytes(image);
+        Path path = Files.createTempFile("large", ".png");
+        try {
+            Files.write(path, image);
+
+            String result = process(".a{background:url(" + path + ")}");
+
+            assertThat(result, is(".a{background:url(data:image/png;base64," + Base64.encodeBase64String(image) + ")}"));
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void test_inline_concurrently_same_as_sequential() throws IOException {
+        HttpServer server = startServer(0);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            StringBuilder stylesheet = new StringBuilder(stylesheetPNG).append(stylesheetJPG).append(".u{background:url(unknown.png)}");
+            for (int i = 0; i < 20; i++) {
+                stylesheet.append(".a").append(i).append("{background:url('").append(url(server, i % 10)).append("')}\n");
+            }
+            ImagesInliner inliner = ImagesInliner.with(new HttpPathResolver(), new FilesystemPathResolver());
+
+            String sequential = inliner.process(stylesheet.toString());
+            String concurrent = inliner.resolvingOn(executor, 10, TimeUnit.SECONDS).process(stylesheet.toString());
+
+            assertThat(concurrent, is(sequential));
+            assertThat(concurrent, not(containsString("localhost")));
+        } finally {
+            executor.shutdownNow();
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void test_slow_url_not_inlined() throws IOException {
+        HttpServer server = startServer(5000);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            String stylesheet = stylesheetPNG + ".slow{background:url(" + url(server, 0) + ")}";
+            ImagesInliner inliner = ImagesInliner.with(new HttpPathResolver(), new FilesystemPathResolver());
+
+            long start = System.currentTimeMillis();
+            String result = inliner.resolvingOn(executor, 200, TimeUnit.MILLISECONDS).process(stylesheet);
+
+            assertThat(System.currentTimeMillis() - start < 2000, is(true));
+            assertThat(result, containsString("data:image/png;base64,"));
+            assertThat(result, containsString(".slow{background:url(" + url(server, 0) + ")}"));
+        } finally {
+            executor.shutdownNow();
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void test_url_never_responding_frees_thread() throws IOException {
+        HttpServer server = startServer(Long.MAX_VALUE);
+        ExecutorService executor = Executors.newFixedThreadPool(1);
+        try {
+            ImagesInliner inliner = ImagesInliner.with(new HttpPathResolver(), new FilesystemPathResolver()).resolvingOn(executor, 200, TimeUnit.MILLISECONDS);
+            inliner.process(".never{background:url(" + url(server, 0) + ")}");
+
+            // The only thread is free again for the next stylesheet
+            assertThat(inliner.process(stylesheetPNG), containsString("data:image/png;base64,"));
+        } finally {
+            executor.shutdownNow();
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void test_more_slow_urls_than_threads() throws IOException {
+        HttpServer server = startServer(300);
+        ExecutorService executor = Executors.newFixedThreadPool(1);
+        try {
+            ImagesInliner inliner = ImagesInliner.with(new HttpPathResolver(), new FilesystemPathResolver()).resolvingOn(executor, 500, TimeUnit.MILLISECONDS);
+            StringBuilder stylesheet = new StringBuilder();
+            for (int i = 0; i < 4; i++) {
+                stylesheet.append(".slow").append(i).append("{background:url(").append(url(server, i)).append(")}\n");
+            }
+            String result = inliner.process(stylesheet.toString());
+
+            // The URLs not done by the deadline are left unchanged
+            assertThat(result, containsString("data:image/png;base64,"));
+            assertThat(result, containsString("url(" + url(server, 3) + ")"));
+        } finally {
+            executor.shutdownNow();
+            server.stop(0);
+        }
+    }
+
+    private static HttpServer startServer(final long delayMillis) throws IOException {
+        final byte[] image = Files.readAllBytes(Paths.get("src/test/resources/test-image-green.png"));
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                exchange.getResponseHeaders().add("Content-Type", "image/png");
+                exchange.sendResponseHeaders(200, image.length);
+                try (OutputStream body = exchange.getResponseBody()) {
+                    body.write(image);
+                }
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        return server;
+    }
+
+    private static String url(HttpServer server, int image) {
+        return "http://localhost:" + server.getAddress().getPort() + "/image" + image + ".png";
+    }
+
     private String process(String stylesheet) throws IOException {
         String result = ImagesInliner.inline(stylesheet);
         return result;
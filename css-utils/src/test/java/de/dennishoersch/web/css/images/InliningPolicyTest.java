@@ -0,0 +1,106 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css.images;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import de.dennishoersch.web.css.images.resolver.FilesystemPathResolver;
+
+/**
+ * @author hoersch
+ *
+ */
+public class InliningPolicyTest {
+    private static final String _PNG = "src/test/resources/test-image-green.png";
+    private static final String _JPG = "src/test/resources/test-image-red.jpg";
+
+    private final List<String> _inlined = Lists.newArrayList();
+    private final List<String> _skipped = Lists.newArrayList();
+
+    private final InliningPolicy.Report _report = new InliningPolicy.Report() {
+        @Override
+        public void inlined(String url, String contentType, int size) {
+            _inlined.add(url);
+        }
+
+        @Override
+        public void skipped(String url, String reason) {
+            _skipped.add(url);
+        }
+    };
+
+    @Test
+    public void test_inline_all() throws IOException {
+        String stylesheet = stylesheet(_PNG, _JPG);
+
+        String result = process(stylesheet, InliningPolicy.inlineAll());
+
+        assertThat(result, is(ImagesInliner.with(new FilesystemPathResolver()).process(stylesheet)));
+        assertThat(_inlined, is((List<String>) Lists.newArrayList(_PNG, _JPG)));
+    }
+
+    @Test
+    public void test_content_types_denied() throws IOException {
+        String result = process(stylesheet(_PNG, _JPG), InliningPolicy.inlineAll().allowing("image/*").denying("image/jpeg"));
+
+        assertThat(result, containsString("url(" + _JPG + ")"));
+        assertThat(result, not(containsString("url(" + _PNG + ")")));
+        assertThat(_skipped, is((List<String>) Lists.newArrayList(_JPG)));
+    }
+
+    @Test
+    public void test_max_image_size() throws IOException {
+        String result = process(stylesheet(_PNG), InliningPolicy.inlineAll().withMaxImageSize(10));
+
+        assertThat(result, is(stylesheet(_PNG)));
+        assertThat(_skipped, is((List<String>) Lists.newArrayList(_PNG)));
+    }
+
+    @Test
+    public void test_budget_most_referenced_first() throws IOException {
+        int pngSize = ImagesInliner.with(new FilesystemPathResolver()).process("url(" + _PNG + ")").length() - "url()".length();
+        String stylesheet = stylesheet(_JPG, _PNG, _PNG);
+
+        String result = process(stylesheet, InliningPolicy.inlineAll().withBudget(2 * pngSize, InliningPolicy.Order.MOST_REFERENCED_FIRST));
+
+        assertThat(result, containsString("url(" + _JPG + ")"));
+        assertThat(result, not(containsString("url(" + _PNG + ")")));
+        assertThat(_inlined, is((List<String>) Lists.newArrayList(_PNG)));
+        assertThat(_skipped, is((List<String>) Lists.newArrayList(_JPG)));
+    }
+
+    private String process(String stylesheet, InliningPolicy policy) throws IOException {
+        return ImagesInliner.with(new FilesystemPathResolver()).applying(policy.reportingTo(_report)).process(stylesheet);
+    }
+
+    private static String stylesheet(String... urls) {
+        StringBuilder stylesheet = new StringBuilder();
+        for (int i = 0; i < urls.length; i++) {
+            stylesheet.append(".a").append(i).append("{background:url(").append(urls[i]).append(")}");
+        }
+        return stylesheet.toString();
+    }
+}
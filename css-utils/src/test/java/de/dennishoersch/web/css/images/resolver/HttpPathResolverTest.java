@@ -0,0 +1,148 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css.images.resolver;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * @author hoersch
+ *
+ */
+public class HttpPathResolverTest {
+    private static final byte[] _IMAGE = { 1, 2, 3 };
+
+    private HttpServer _server;
+    private final AtomicInteger _requests = new AtomicInteger();
+    private final CountDownLatch _respond = new CountDownLatch(1);
+
+    @Before
+    public void startServer() throws IOException {
+        _server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        _server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                _requests.incrementAndGet();
+                try {
+                    _respond.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                exchange.getResponseHeaders().add("Content-Type", "image/png; charset=binary");
+                exchange.sendResponseHeaders(200, _IMAGE.length);
+                try (OutputStream body = exchange.getResponseBody()) {
+                    body.write(_IMAGE);
+                }
+            }
+        });
+        _server.setExecutor(Executors.newCachedThreadPool());
+        _server.start();
+    }
+
+    @After
+    public void stopServer() {
+        _respond.countDown();
+        _server.stop(0);
+    }
+
+    @Test
+    public void test_downloaded_into_memory() throws IOException {
+        _respond.countDown();
+
+        URLContent content = new HttpPathResolver().resolve(url());
+
+        assertThat(content.getContent().read(), is(_IMAGE));
+        assertThat(content.getContentType(), is("image/png"));
+        assertThat(content.getPath() == null, is(true));
+    }
+
+    @Test
+    public void test_concurrent_requests_downloaded_once() throws Exception {
+        final HttpPathResolver resolver = new HttpPathResolver();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<URLContent>> resolved = Lists.newArrayList();
+            for (int i = 0; i < 4; i++) {
+                resolved.add(executor.submit(new Callable<URLContent>() {
+                    @Override
+                    public URLContent call() throws IOException {
+                        return resolver.resolve(url());
+                    }
+                }));
+            }
+            // Give all of them the chance to ask for the running download
+            Thread.sleep(200);
+            _respond.countDown();
+
+            for (Future<URLContent> content : resolved) {
+                assertThat(content.get().getContent().read(), is(_IMAGE));
+            }
+            assertThat(_requests.get(), is(1));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void test_server_never_responding_times_out() throws IOException {
+        try {
+            new HttpPathResolver(200, TimeUnit.MILLISECONDS).resolve(url());
+            fail();
+        } catch (SocketTimeoutException e) {
+            // Expected
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void test_deadline_of_thread() throws IOException {
+        HttpPathResolver.setDeadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(200));
+        try {
+            new HttpPathResolver().resolve(url());
+            fail();
+        } catch (SocketTimeoutException e) {
+            // Expected
+        } finally {
+            HttpPathResolver.clearDeadline();
+        }
+    }
+
+    private String url() {
+        return "http://localhost:" + _server.getAddress().getPort() + "/image";
+    }
+}
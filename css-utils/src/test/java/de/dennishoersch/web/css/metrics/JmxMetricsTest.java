@@ -0,0 +1,109 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css.metrics;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.management.JMX;
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.dennishoersch.web.css.images.ImagesInliner;
+import de.dennishoersch.web.css.images.resolver.FilesystemPathResolver;
+import de.dennishoersch.web.css.parser.Parser;
+
+/**
+ * @author hoersch
+ *
+ */
+public class JmxMetricsTest {
+    private static final String _CSS = ".a, .b { color: red }\n.c { color: red }\n.a { padding: 0; margin: 0 }";
+
+    private JmxMetrics _metrics;
+
+    @Before
+    public void register() {
+        _metrics = JmxMetrics.register();
+    }
+
+    @After
+    public void close() {
+        _metrics.close();
+    }
+
+    @Test
+    public void test_parse_measured() throws Exception {
+        Parser.parse(_CSS).toString();
+
+        JmxMetricsMXBean bean = JMX.newMXBeanProxy(ManagementFactory.getPlatformMBeanServer(), new ObjectName("de.dennishoersch.web.css:type=Metrics"), JmxMetricsMXBean.class);
+        assertThat(bean.getRules(), is(3L));
+        assertThat(bean.getSelectors(), is(4L));
+        assertThat(bean.getDeclarations(), is(4L));
+        // .a .b .c .a -> .a .b .c -> .b,.c .a
+        assertThat(bean.getMergeHitRate(), is(0.25));
+        assertThat(bean.getMergeByContentHitRate(), is(1 / 3.0));
+        assertThat(bean.getPhaseCounts().get("PARSE"), is(1L));
+        assertThat(bean.getPhaseCounts().get("SERIALIZE"), is(1L));
+        assertThat(bean.getPhaseInput().get("PARSE"), is((long) _CSS.length()));
+
+        bean.reset();
+        assertThat(bean.getRules(), is(0L));
+        assertThat(bean.getPhaseCounts().get("PARSE"), is(0L));
+    }
+
+    @Test
+    public void test_parallel_parse_measured() {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            Parser.parse(_CSS, pool);
+        } finally {
+            pool.shutdown();
+        }
+
+        assertThat(_metrics.getRules(), is(3L));
+        assertThat(_metrics.getPhaseCounts().get("STRIP"), is(1L));
+        assertThat(_metrics.getPhaseOutput().get("STRIP"), greaterThan(0L));
+        assertThat(_metrics.getPhaseCounts().get("MERGE_BY_CONTENT"), is(1L));
+    }
+
+    @Test
+    public void test_images_measured() throws Exception {
+        String css = ".a{background:url(src/test/resources/test-image-green.png)}.b{background:url(unknown.png)}";
+        ImagesInliner.with(new FilesystemPathResolver()).process(new StringReader(css), new StringWriter());
+
+        assertThat(_metrics.getImagesResolved(), is(2L));
+        assertThat(_metrics.getImageCacheHits(), is(0L));
+        assertThat(_metrics.getPhaseInput().get("INLINE"), is((long) css.length()));
+    }
+
+    @Test
+    public void test_disabled_when_closed() {
+        assertThat(Metrics.isEnabled(), is(true));
+        _metrics.close();
+        assertThat(Metrics.isEnabled(), is(false));
+        _metrics = JmxMetrics.register();
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css.parser;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+/**
+ * @author hoersch
+ *
+ */
+public class DeclarationOrderTest {
+
+    @Test
+    public void test_styles_sorted_by_name() {
+        assertThat(sorted(".a{padding:0;color:red;background:blue}"), is(".a{background:blue;color:red;padding:0;}"));
+        assertThat(sorted(".a{color:red}"), is(".a{color:red;}"));
+    }
+
+    @Test
+    public void test_rules_with_same_styles_combined() {
+        assertThat(sorted(".a{color:red;padding:0}.b{padding:0;color:red}"), is(".a,.b{color:red;padding:0;}"));
+    }
+
+    @Test
+    public void test_sorted_in_media_queries() {
+        assertThat(sorted("@media screen{.a{padding:0;color:red}}"), is("@media screen{.a{color:red;padding:0;}}"));
+    }
+
+    @Test
+    public void test_interacting_styles_keep_order() {
+        // Same root
+        assertThat(sorted(".a{border-top:0;border-radius:1px;color:red}"), is(".a{border-top:0;border-radius:1px;color:red;}"));
+        // Shorthand with another root
+        assertThat(sorted(".a{z-index:1;inset:0;bottom:auto}"), is(".a{inset:0;bottom:auto;z-index:1;}"));
+        assertThat(sorted(".a{place-items:center;justify-items:start}"), is(".a{place-items:center;justify-items:start;}"));
+        assertThat(sorted(".a{columns:2;column-width:10em}"), is(".a{columns:2;column-width:10em;}"));
+        // Aliases
+        assertThat(sorted(".a{grid-gap:10px;gap:20px}"), is(".a{grid-gap:10px;gap:20px;}"));
+        assertThat(sorted(".a{grid-gap:10px;row-gap:20px}"), is(".a{grid-gap:10px;row-gap:20px;}"));
+        assertThat(sorted(".a{word-wrap:break-word;overflow-wrap:anywhere}"), is(".a{word-wrap:break-word;overflow-wrap:anywhere;}"));
+        assertThat(sorted(".a{page-break-before:always;break-before:avoid}"), is(".a{page-break-before:always;break-before:avoid;}"));
+        // Logical and physical properties
+        assertThat(sorted(".a{left:0;inset-inline-start:5px}"), is(".a{left:0;inset-inline-start:5px;}"));
+        assertThat(sorted(".a{width:10px;inline-size:20px}"), is(".a{width:10px;inline-size:20px;}"));
+        assertThat(sorted(".a{padding-top:0;margin-block-start:1px;color:red}"), is(".a{padding-top:0;margin-block-start:1px;color:red;}"));
+        // New shorthands
+        assertThat(sorted(".a{white-space:normal;text-wrap:nowrap}"), is(".a{white-space:normal;text-wrap:nowrap;}"));
+        // Hacks and all
+        assertThat(sorted(".a{zoom:1;*display:inline;color:red}"), is(".a{zoom:1;*display:inline;color:red;}"));
+        assertThat(sorted(".a{color:red;all:unset;background:none}"), is(".a{color:red;all:unset;background:none;}"));
+    }
+
+    @Test
+    public void test_vendor_prefixed_styles_keep_order() {
+        assertThat(sorted(".a{-webkit-transition:opacity 1s;transition:opacity 1s;opacity:0}"), is(".a{opacity:0;-webkit-transition:opacity 1s;transition:opacity 1s;}"));
+        assertThat(sorted(".a{display:-webkit-box;display:flex;color:red}"), is(".a{color:red;display:-webkit-box;display:flex;}"));
+    }
+
+    @Test
+    public void test_custom_properties() {
+        assertThat(sorted(".a{--b:1;--a:2;color:var(--a)}"), is(".a{--a:2;--b:1;color:var(--a);}"));
+    }
+
+    private static String sorted(String css) {
+        return DeclarationOrder.sort(Parser.parse(css)).toString();
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css.parser;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author hoersch
+ *
+ */
+public class ParseCacheTest {
+
+    @org.junit.Rule
+    public TemporaryFolder _folder = new TemporaryFolder();
+
+    @Test
+    public void test_parsed_from_cache() throws IOException {
+        ParseCache cache = new ParseCache(_folder.getRoot().toPath(), 1024 * 1024);
+        String css = ".a { color: red } .b { color: red }";
+
+        String parsed = cache.parse(css).toString();
+        assertThat(_folder.getRoot().list().length, is(1));
+
+        // The snapshot is used, even if it differs from what would be parsed
+        Path snapshot = _folder.getRoot().listFiles()[0].toPath();
+        Files.copy(snapshotOf(".c{margin:0;}"), snapshot, StandardCopyOption.REPLACE_EXISTING);
+
+        assertThat(parsed, is(".a,.b{color:red;}"));
+        assertThat(cache.parse(css).toString(), is(".c{margin:0;}"));
+    }
+
+    @Test
+    public void test_least_recently_used_evicted() throws IOException {
+        ParseCache cache = new ParseCache(_folder.getRoot().toPath(), 1);
+
+        cache.parse(".a{b:c}");
+        cache.parse(".d{e:f}");
+
+        // Even the last one is evicted, if it is too large
+        assertThat(_folder.getRoot().list().length, is(0));
+    }
+
+    @Test
+    public void test_other_version_aged_out() throws IOException {
+        File other = _folder.newFile("abc.v0.snapshot");
+        Files.write(other.toPath(), new byte[100]);
+
+        // Another version of the tool might still use it
+        new ParseCache(_folder.getRoot().toPath(), 1024);
+        assertThat(other.exists(), is(true));
+
+        new ParseCache(_folder.getRoot().toPath(), 50);
+        assertThat(other.exists(), is(false));
+    }
+
+    private Path snapshotOf(String css) throws IOException {
+        Path snapshot = _folder.newFile("other").toPath();
+        try (OutputStream out = Files.newOutputStream(snapshot)) {
+            StylesheetSnapshot.write(Parser.parse(css), out);
+        }
+        return snapshot;
+    }
+}
@@ -16,14 +16,19 @@
 package de.dennishoersch.web.css.parser;
 
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
 import static org.junit.Assert.assertThat;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.StringReader;
 import java.io.StringWriter;
 import java.net.URISyntaxException;
+import java.nio.channels.Channels;
 import java.nio.charset.Charset;
+import java.util.concurrent.ForkJoinPool;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -31,6 +36,7 @@ import org.hamcrest.Description;
 import org.hamcrest.TypeSafeMatcher;
 import org.junit.Test;
 
+import com.google.common.base.Charsets;
 import com.google.common.io.Files;
 
 /**
@@ -128,6 +134,131 @@ public class ParserTest {
         // .paddingWithMarginTop{padding:20px;margin-top:10px;}
     }
 
+    @Test
+    public void test_parse_streamed() throws Exception {
+
+        final StringBuilder events = new StringBuilder();
+
+        Parser.parse(new StringReader(".a, .b { color: red; } @media screen { .c { padding: 0 } }"), new CssHandler() {
+
+            @Override
+            public void startRule() {
+                events.append("[");
+            }
+
+            @Override
+            public void selector(String selector) {
+                events.append("<").append(selector).append(">");
+            }
+
+            @Override
+            public void startBlock() {
+                events.append("{");
+            }
+
+            @Override
+            public void declaration(String name, String value) {
+                events.append(name).append("=").append(value).append(";");
+            }
+
+            @Override
+            public void endRule() {
+                events.append("]");
+            }
+        });
+
+        assertThat(events.toString(), is("[<.a><.b>color=red;][<@media screen>{[<.c>padding=0;]]"));
+    }
+
+    @Test
+    public void test_parse_streamed_same_as_parsed() throws Exception {
+
+        String css = getFileContent("test-complex.css");
+
+        StylesheetBuilder builder = new StylesheetBuilder();
+        Parser.parse(new StringReader(css), builder);
+
+        assertThat(builder.getStylesheet().toString(), is(Parser.parse(css).toString()));
+    }
+
+    @Test
+    public void test_write_same_as_toString() throws Exception {
+
+        Stylesheet stylesheet = Parser.parse(getFileContent("test-complex.css"));
+        String expected = stylesheet.toString();
+
+        assertThat(stylesheet.length(), is(expected.length()));
+
+        StringWriter written = new StringWriter();
+        stylesheet.writeTo(written);
+        assertThat(written.toString(), is(expected));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        stylesheet.writeTo(Channels.newChannel(bytes), Charsets.UTF_8);
+        assertThat(new String(bytes.toByteArray(), Charsets.UTF_8), is(expected));
+    }
+
+    @Test
+    public void test_parse_parallel_same_as_parsed() throws Exception {
+
+        // Enough rules for several shards, the same selectors and contents appear in different shards
+        StringBuilder css = new StringBuilder(getFileContent("test-complex.css"));
+        for (int i = 0; i < 20000; i++) {
+            css.append(".r").append(i % 5000).append(" { margin: ").append(i % 7).append("px; }\n");
+            css.append("@media screen { .m").append(i % 100).append(" { color: red } }\n");
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertThat(Parser.parse(css.toString(), pool).toString(), is(Parser.parse(css.toString()).toString()));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void test_longhands_overridden_by_shorthand() {
+        assertThat(Parser.parse(".a{margin-top:0;color:red;margin:5px}").toString(), is(".a{color:red;margin:5px;}"));
+        assertThat(Parser.parse(".a{border-top-color:red;border:1px solid}").toString(), is(".a{border:1px solid;}"));
+        assertThat(Parser.parse(".a{-webkit-transition-delay:1s;-webkit-transition:all 2s}").toString(), is(".a{-webkit-transition:all 2s;}"));
+        // Not the other way round
+        assertThat(Parser.parse(".a{margin:5px;margin-top:0}").toString(), is(".a{margin:5px;margin-top:0;}"));
+        assertThat(Parser.parse(".a{-moz-transition-delay:1s;-webkit-transition:all 2s}").toString(), is(".a{-moz-transition-delay:1s;-webkit-transition:all 2s;}"));
+    }
+
+    @Test
+    public void test_shorthand_overridden_by_all_longhands() {
+        assertThat(Parser.parse(".a{padding:1px;padding-top:0;padding-right:0;padding-bottom:0;padding-left:0}").toString(),
+                is(".a{padding-top:0;padding-right:0;padding-bottom:0;padding-left:0;}"));
+        assertThat(Parser.parse(".a{padding:1px;padding-top:0;padding-right:0}").toString(), is(".a{padding:1px;padding-top:0;padding-right:0;}"));
+        // Shorthands also reset longhands which are rarely given
+        assertThat(Parser.parse(".a{font:12px serif;font-style:normal;font-variant:normal;font-weight:400;font-stretch:normal;font-size:1em;line-height:1;font-family:a}").toString(),
+                is(".a{font:12px serif;font-style:normal;font-variant:normal;font-weight:400;font-stretch:normal;font-size:1em;line-height:1;font-family:a;}"));
+        assertThat(Parser.parse(".a{text-decoration:underline 2px;text-decoration-line:none;text-decoration-style:solid;text-decoration-color:red}").toString(),
+                is(".a{text-decoration:underline 2px;text-decoration-line:none;text-decoration-style:solid;text-decoration-color:red;}"));
+    }
+
+    @Test
+    public void test_overridden_keep_order() {
+        // The later shorthand must stay after the longhand
+        assertThat(Parser.parse(".a{margin:0;margin-top:5px;margin:1px}").toString(), is(".a{margin:1px;}"));
+        assertThat(Parser.parse(".a{margin:0;margin-top:5px;color:red;margin-top:6px}").toString(), is(".a{margin:0;color:red;margin-top:6px;}"));
+    }
+
+    @Test
+    public void test_important_not_overridden() {
+        assertThat(Parser.parse(".a{color:red !important;color:blue}").toString(), is(".a{color:red !important;}"));
+        assertThat(Parser.parse(".a{margin-top:0!important;margin:5px}").toString(), is(".a{margin-top:0!important;margin:5px;}"));
+        assertThat(Parser.parse(".a{color:red!important;color:blue ! IMPORTANT}").toString(), is(".a{color:blue ! IMPORTANT;}"));
+    }
+
+    @Test
+    public void test_vendor_prefix_fallbacks_kept() {
+        assertThat(Parser.parse(".a{display:box;display:-webkit-box;display:flex}").toString(), is(".a{display:box;display:-webkit-box;display:flex;}"));
+        assertThat(Parser.parse(".a{outline:thin dotted;outline:5px auto -webkit-focus-ring-color}").toString(),
+                is(".a{outline:thin dotted;outline:5px auto -webkit-focus-ring-color;}"));
+    }
+
     private String getFileContent(String filename) throws IOException, URISyntaxException {
         return Files.toString(getFile(filename), Charset.defaultCharset());
     }
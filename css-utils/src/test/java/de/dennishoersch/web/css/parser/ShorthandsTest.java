@@ -0,0 +1,72 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css.parser;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+/**
+ * @author hoersch
+ *
+ */
+public class ShorthandsTest {
+
+    @Test
+    public void test_longhands_merged() {
+        assertThat(merged(".a{margin-top:0;margin-right:1px;color:red;margin-bottom:0;margin-left:1px}"), is(".a{color:red;margin:0 1px;}"));
+        assertThat(merged(".a{padding-top:1px;padding-right:2px;padding-bottom:3px;padding-left:4px}"), is(".a{padding:1px 2px 3px 4px;}"));
+        assertThat(merged(".a{padding-top:1px;padding-right:2px;padding-bottom:3px;padding-left:2px}"), is(".a{padding:1px 2px 3px;}"));
+        assertThat(merged(".a{border-top-width:0;border-right-width:0;border-bottom-width:0;border-left-width:0}"), is(".a{border-width:0;}"));
+    }
+
+    @Test
+    public void test_merged_rules_normalized_again() {
+        assertThat(merged(".a{margin:0}.b{margin-top:0;margin-right:0;margin-bottom:0;margin-left:0}"), is(".a,.b{margin:0;}"));
+    }
+
+    @Test
+    public void test_merged_in_media_queries() {
+        assertThat(merged("@media screen{.a{margin-top:0;margin-right:0;margin-bottom:0;margin-left:0}}"), is("@media screen{.a{margin:0;}}"));
+    }
+
+    @Test
+    public void test_important_merged() {
+        assertThat(merged(".a{margin-top:0!important;margin-right:0 !important;margin-bottom:0!important;margin-left:0!important}"),
+                is(".a{margin:0!important;}"));
+        assertThat(merged(".a{margin-top:0!important;margin-right:0;margin-bottom:0;margin-left:0}"),
+                is(".a{margin-top:0!important;margin-right:0;margin-bottom:0;margin-left:0;}"));
+    }
+
+    @Test
+    public void test_not_merged() {
+        // Incomplete
+        assertThat(merged(".a{margin-top:0;margin-right:0;margin-bottom:0}"), is(".a{margin-top:0;margin-right:0;margin-bottom:0;}"));
+        // Keywords which are not allowed in shorthands
+        assertThat(merged(".a{margin-top:inherit;margin-right:0;margin-bottom:0;margin-left:0}"), is(".a{margin-top:inherit;margin-right:0;margin-bottom:0;margin-left:0;}"));
+        // Browser hacks
+        assertThat(merged(".a{margin-top:0;*margin-top:4px;margin-right:0;margin-bottom:0;margin-left:0}"),
+                is(".a{margin-top:0;*margin-top:4px;margin-right:0;margin-bottom:0;margin-left:0;}"));
+        // Vendor prefixed values
+        assertThat(merged(".a{margin-top:-webkit-calc(1px + 1px);margin-right:0;margin-bottom:0;margin-left:0}"),
+                is(".a{margin-top:-webkit-calc(1px + 1px);margin-right:0;margin-bottom:0;margin-left:0;}"));
+    }
+
+    private static String merged(String css) {
+        return Shorthands.merge(Parser.parse(css)).toString();
+    }
+}
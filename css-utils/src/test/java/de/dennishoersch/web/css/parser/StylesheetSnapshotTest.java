@@ -0,0 +1,48 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css.parser;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+/**
+ * @author hoersch
+ *
+ */
+public class StylesheetSnapshotTest {
+
+    @Test
+    public void test_snapshot_read_as_written() throws Exception {
+        File file = new File(getClass().getResource("test-complex.css").toURI());
+        Stylesheet stylesheet = Parser.parse(Files.toString(file, Charset.defaultCharset()));
+
+        ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+        StylesheetSnapshot.write(stylesheet, snapshot);
+
+        assertThat(snapshot.size(), lessThan(stylesheet.length()));
+        assertThat(StylesheetSnapshot.read(ByteBuffer.wrap(snapshot.toByteArray())).toString(), is(stylesheet.toString()));
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css.parser;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+/**
+ * @author hoersch
+ *
+ */
+public class SymbolsTest {
+
+    @Test
+    public void test_interned_once() {
+        Symbols symbols = new Symbols(100, 10);
+        char[] chars = "a{color:red}".toCharArray();
+
+        String color = symbols.intern(chars, 2, 7);
+        assertThat(color, is("color"));
+        assertThat(symbols.intern(chars, 2, 7), sameInstance(color));
+        assertThat(symbols.symbol(symbols.id(new String("color"))), sameInstance(color));
+        assertThat(symbols.id("red"), not(symbols.id("color")));
+    }
+
+    @Test
+    public void test_long_strings_not_interned() {
+        Symbols symbols = new Symbols(100, 3);
+        assertThat(symbols.id("abcd"), is(-1));
+        assertThat(symbols.intern("abcd".toCharArray(), 0, 4), is("abcd"));
+    }
+
+    @Test
+    public void test_no_more_than_max_size() {
+        Symbols symbols = new Symbols(2000, 10);
+        for (int i = 0; i < 2000; i++) {
+            assertThat(symbols.id("s" + i), is(i));
+        }
+        assertThat(symbols.id("full"), is(-1));
+        assertThat(symbols.id("s1999"), is(1999));
+        assertThat(symbols.symbol(1500), is("s1500"));
+    }
+
+    @Test
+    public void test_same_symbols() {
+        String value = "url(data:image/png;base64," + new String(new char[200]).replace('\0', 'A') + ")";
+        assertThat(new Style("color", "red").hasSameSymbols(new Style("color:red")), is(true));
+        assertThat(new Style("color", "red").hasSameSymbols(new Style("color", "blue")), is(false));
+        assertThat(new Style("background", value).hasSameSymbols(new Style("background", new String(value))), is(true));
+        assertThat(new Style("background", value).hasSameSymbols(new Style("background", value + " ")), is(false));
+    }
+
+    @Test
+    public void test_styles_not_interned() {
+        String value = "url(data:image/png;base64," + new String(new char[200]).replace('\0', 'A') + ")";
+        Style style = new Style("background", value);
+        assertThat(style.getName(), is("background"));
+        assertThat(style.getValue(), is(value));
+        assertThat(style.toString(), is("background:" + value));
+        assertThat(style.length(), is(style.toString().length()));
+
+        String name = new String(new char[100]).replace('\0', 'x');
+        style = new Style(name + ":" + value);
+        assertThat(style.getName(), is(name));
+        assertThat(style.getValue(), is(value));
+        assertThat(style.toString(), is(name + ":" + value));
+    }
+}
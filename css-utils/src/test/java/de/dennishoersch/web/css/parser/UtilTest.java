@@ -0,0 +1,52 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css.parser;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+/**
+ * @author hoersch
+ *
+ */
+public class UtilTest {
+
+    @Test
+    public void test_whitespaces_stripped() {
+        assertThat(Util.stripUnnecessary("a {\n  color : red ;\n}\n"), is("a{color:red;}"));
+    }
+
+    @Test
+    public void test_comments_and_semicolons_stripped() {
+        assertThat(Util.stripUnnecessary("/* comment */ .a{b:c;;;d:e}"), is(".a{b:c;d:e}"));
+    }
+
+    @Test
+    public void test_empty_rules_stripped() {
+        assertThat(Util.stripUnnecessary(".empty { }\n.a { b: c }"), is(".a{b:c}"));
+        // Only one level
+        assertThat(Util.stripUnnecessary("@media screen {\n .x{}\n}"), is("@media screen{}"));
+    }
+
+    @Test
+    public void test_urls_not_stripped() {
+        assertThat(Util.stripUnnecessary(".a{background:url(http://www.x.de/a.png) no-repeat} // line comment\n.b{c:d}"),
+                is(".a{background:url(http://www.x.de/a.png) no-repeat}.b{c:d}"));
+        assertThat(Util.stripUnnecessary(".a{background:url( /* not a comment */ )}"), is(".a{background:url( /* not a comment */ )}"));
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.dennishoersch.web.css.parser;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * @author hoersch
+ *
+ */
+public class ValuePassesTest {
+
+    @Test
+    public void test_colors() {
+        assertThat(ValuePasses.COLORS.minify("color", "#FFFFFF"), is("#fff"));
+        assertThat(ValuePasses.COLORS.minify("color", "#ff0000"), is("red"));
+        assertThat(ValuePasses.COLORS.minify("color", "#aabbccdd"), is("#abcd"));
+        assertThat(ValuePasses.COLORS.minify("color", "#aabbcd"), is("#aabbcd"));
+        assertThat(ValuePasses.COLORS.minify("color", "rgb(255, 255, 255)"), is("#fff"));
+        assertThat(ValuePasses.COLORS.minify("color", "rgba(1,2,3,1)"), is("#010203"));
+        assertThat(ValuePasses.COLORS.minify("color", "rgba(1,2,3,.5)"), is("rgba(1,2,3,.5)"));
+        assertThat(ValuePasses.COLORS.minify("border", "1px solid white!important"), is("1px solid #fff!important"));
+        assertThat(ValuePasses.COLORS.minify("background-image", "linear-gradient(#ffffff, rgb(0 0 0))"), is("linear-gradient(#fff, #000)"));
+        // Names only in color properties, not in strings and URLs
+        assertThat(ValuePasses.COLORS.minify("animation-name", "white"), is("white"));
+        assertThat(ValuePasses.COLORS.minify("background", "url(white.png) white"), is("url(white.png) #fff"));
+        assertThat(ValuePasses.COLORS.minify("content", "'#ffffff'"), is("'#ffffff'"));
+        // Old IE filters need the long form
+        assertThat(ValuePasses.COLORS.minify("filter", "progid:DXImageTransform.Microsoft.gradient(startColorstr=#ffffffff)"),
+                is("progid:DXImageTransform.Microsoft.gradient(startColorstr=#ffffffff)"));
+        assertThat(ValuePasses.COLORS.minify("--main", "#ffffff"), is("#ffffff"));
+    }
+
+    @Test
+    public void test_numbers() {
+        assertThat(ValuePasses.NUMBERS.minify("opacity", "0.50"), is(".5"));
+        assertThat(ValuePasses.NUMBERS.minify("margin", "-0.5em 1.0px 010% 0.0"), is("-.5em 1px 10% 0"));
+        assertThat(ValuePasses.NUMBERS.minify("transform", "scale(1.50)"), is("scale(1.5)"));
+        assertThat(ValuePasses.NUMBERS.minify("transition", "all 0.30s"), is("all .3s"));
+        // Not in colors, identifiers and strings
+        assertThat(ValuePasses.NUMBERS.minify("color", "#010"), is("#010"));
+        assertThat(ValuePasses.NUMBERS.minify("grid-area", "col-1.0"), is("col-1.0"));
+        assertThat(ValuePasses.NUMBERS.minify("content", "'1.0'"), is("'1.0'"));
+    }
+
+    @Test
+    public void test_zero_units() {
+        assertThat(ValuePasses.ZERO_UNITS.minify("margin", "0px 0.0em 1px -0px"), is("0 0 1px 0"));
+        assertThat(ValuePasses.ZERO_UNITS.minify("margin", "0px!important"), is("0!important"));
+        // Times, angles and percentages keep their unit
+        assertThat(ValuePasses.ZERO_UNITS.minify("transition", "color 0s"), is("color 0s"));
+        assertThat(ValuePasses.ZERO_UNITS.minify("transform", "rotate(0deg)"), is("rotate(0deg)"));
+        assertThat(ValuePasses.ZERO_UNITS.minify("width", "0%"), is("0%"));
+        // Not in calculations and flex bases
+        assertThat(ValuePasses.ZERO_UNITS.minify("width", "calc(0px + 10%)"), is("calc(0px + 10%)"));
+        assertThat(ValuePasses.ZERO_UNITS.minify("flex", "1 1 0px"), is("1 1 0px"));
+        assertThat(ValuePasses.ZERO_UNITS.minify("-ms-flex", "1 1 0px"), is("1 1 0px"));
+        assertThat(ValuePasses.ZERO_UNITS.minify("-webkit-flex-basis", "0px"), is("0px"));
+        assertThat(Minifier.minify(Parser.parse(".a{-ms-flex:1 1 0px;-webkit-flex:1 1 0px;flex:1 1 0px}"), ValuePasses.named("zero-units")).toString(),
+                is(".a{-ms-flex:1 1 0px;-webkit-flex:1 1 0px;flex:1 1 0px;}"));
+    }
+
+    @Test
+    public void test_quotes() {
+        assertThat(ValuePasses.QUOTES.minify("background", "url(\"a.png\") no-repeat"), is("url(a.png) no-repeat"));
+        assertThat(ValuePasses.QUOTES.minify("background", "url( 'a.png' )"), is("url(a.png)"));
+        assertThat(ValuePasses.QUOTES.minify("background", "url('a b.png')"), is("url('a b.png')"));
+        assertThat(ValuePasses.QUOTES.minify("font-family", "\"Open Sans\", 'Arial', \"serif\", '1942 report', sans-serif"),
+                is("Open Sans, Arial, \"serif\", '1942 report', sans-serif"));
+        assertThat(ValuePasses.QUOTES.minify("content", "\"Arial\""), is("\"Arial\""));
+    }
+
+    @Test
+    public void test_font_weight() {
+        assertThat(ValuePasses.FONT_WEIGHT.minify("font-weight", "bold"), is("700"));
+        assertThat(ValuePasses.FONT_WEIGHT.minify("font-weight", "normal !important"), is("400 !important"));
+        assertThat(ValuePasses.FONT_WEIGHT.minify("font-weight", "bolder"), is("bolder"));
+        assertThat(ValuePasses.FONT_WEIGHT.minify("font-style", "normal"), is("normal"));
+    }
+
+    @Test
+    public void test_named() {
+        assertThat(ValuePasses.named("colors, zero-units"), is(Arrays.<ValuePass> asList(ValuePasses.COLORS, ValuePasses.ZERO_UNITS)));
+        assertThat(ValuePasses.named("all").size(), is(ValuePasses.values().length));
+        assertThat(ValuePasses.named("").isEmpty(), is(true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_unknown_named() {
+        ValuePasses.named("colours");
+    }
+
+    @Test
+    public void test_stylesheet_minified() {
+        Stylesheet stylesheet = Parser.parse(".a{color:#ffffff;margin:0px}.b{color:white;margin:0}@media screen{.c{opacity:0.50}}");
+        assertThat(Minifier.minify(stylesheet, ValuePasses.named("all")).toString(), is(".a,.b{color:#fff;margin:0;}@media screen{.c{opacity:.5;}}"));
+    }
+}